@@ -0,0 +1,126 @@
+package com.doridori.lib.db.utils;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Iterator;
+
+/**
+ * Writes many rows through one cached, compiled statement (usually from {@link SqlWriteStmtBuilder}), committing every
+ * chunkSize rows rather than once per row:
+ *
+ * <pre>
+ * SqlWriteStmtBuilder write = new SqlWriteStmtBuilder(MESSAGE_TABLE);
+ * final int body = write.getBindIndex("body");
+ * new BatchWriter&lt;Message&gt;(cache, write.buildInsert(), new BatchWriter.RowBinder&lt;Message&gt;()
+ * {
+ *     public void bind(SQLiteStatement statement, Message row)
+ *     {
+ *         statement.bindString(body, row.body);
+ *     }
+ * }).write(messages);
+ * </pre>
+ *
+ * Each commit is a journal sync, which is what makes a transaction per row so slow. Bigger chunks are faster but hold
+ * the database lock for longer, blocking other writers (and readers unless WAL is on), so keep them to a few hundred
+ * ms of work when other threads use the db. If a chunk fails it is rolled back and the exception thrown, earlier
+ * chunks stay committed. Called inside an existing transaction the chunks nest, so everything commits (or not) with it.
+ *
+ * Same threading rules as {@link SqlStatementCache}.
+ *
+ * @author dorian cussen
+ */
+public class BatchWriter<T>
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final SqlStatementCache mCache;
+    private final String mSql;
+    private final RowBinder<T> mBinder;
+    private int mChunkSize = DEFAULT_CHUNK_SIZE;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * @param sql parameterized INSERT / UPSERT / UPDATE / DELETE run once per row
+     */
+    public BatchWriter(SqlStatementCache cache, String sql, RowBinder<T> binder)
+    {
+        mCache = cache;
+        mSql = sql;
+        mBinder = binder;
+    }
+
+    //============================================================================================================
+    // PUBLIC
+    //============================================================================================================
+
+    /**
+     * @param chunkSize rows per transaction, 0 for all rows in one transaction
+     */
+    public BatchWriter<T> setChunkSize(int chunkSize)
+    {
+        if(chunkSize < 0)
+            throw new IllegalArgumentException("chunkSize must be >= 0");
+
+        mChunkSize = chunkSize;
+
+        return this;
+    }
+
+    /**
+     * @return the number of rows written
+     */
+    public int write(Iterable<T> rows)
+    {
+        SQLiteDatabase db = mCache.getDatabase();
+        SQLiteStatement statement = mCache.get(mSql);
+        Iterator<T> iterator = rows.iterator();
+        int written = 0;
+
+        while(iterator.hasNext())
+        {
+            int chunk = 0;
+
+            db.beginTransaction();
+            try
+            {
+                while(iterator.hasNext() && (mChunkSize == 0 || chunk < mChunkSize))
+                {
+                    statement.clearBindings();
+                    mBinder.bind(statement, iterator.next());
+                    statement.execute();
+                    chunk++;
+                }
+
+                db.setTransactionSuccessful();
+            }
+            finally
+            {
+                db.endTransaction();
+            }
+
+            written += chunk;
+        }
+
+        return written;
+    }
+
+    //============================================================================================================
+    // INNER CLASSES
+    //============================================================================================================
+
+    public interface RowBinder<T>
+    {
+        /**
+         * Bind the rows values, bindings have been cleared so unbound params are null
+         */
+        void bind(SQLiteStatement statement, T row);
+    }
+}
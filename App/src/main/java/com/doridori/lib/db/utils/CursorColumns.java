@@ -0,0 +1,349 @@
+package com.doridori.lib.db.utils;
+
+import android.database.Cursor;
+
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.Col;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves the cursor index of each col once per query shape (the cursors col names), rather than calling
+ * getColumnIndex() for every col of every row. Keep one per table (or projection) in a static field, along with the
+ * col positions from {@link #indexOf(String)}, and read rows through a {@link Row} with primitive getters:
+ *
+ * <pre>
+ * private static final CursorColumns COLS = new CursorColumns(MESSAGE_TABLE);
+ * private static final int ID = COLS.indexOf("_id");
+ * private static final int BODY = COLS.indexOf("body");
+ *
+ * List&lt;Message&gt; messages = COLS.mapAll(cursor, new CursorColumns.RowMapper&lt;Message&gt;()
+ * {
+ *     public Message map(CursorColumns.Row row)
+ *     {
+ *         return new Message(row.getLong(ID), row.getString(BODY));
+ *     }
+ * });
+ * </pre>
+ *
+ * Cols not in the cursor (e.g. left out of the projection) resolve to -1, check with {@link Row#has(int)}.
+ *
+ * Thread safe, the last shape seen is swapped in whole.
+ *
+ * @author dorian cussen
+ */
+public class CursorColumns
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    private final String[] mCols;
+    private final SQLiteDataTypes[] mTypes;
+    private volatile Shape mShape;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * All the tables cols, with their declared types for {@link #typedRowMapper()}
+     */
+    public CursorColumns(SqlCreateStmtBuilder table)
+    {
+        List<Col> cols = table.getCols();
+        mCols = new String[cols.size()];
+        mTypes = new SQLiteDataTypes[cols.size()];
+        for(int i = 0; i < mCols.length; i++)
+        {
+            mCols[i] = cols.get(i).name;
+            mTypes[i] = cols.get(i).type;
+        }
+    }
+
+    /**
+     * For a projection or a query over more than one table. Values are read as TEXT by {@link #typedRowMapper()}
+     */
+    public CursorColumns(String... cols)
+    {
+        mCols = cols.clone();
+        mTypes = new SQLiteDataTypes[cols.length];
+        Arrays.fill(mTypes, SQLiteDataTypes.TEXT);
+    }
+
+    //============================================================================================================
+    // PUBLIC
+    //============================================================================================================
+
+    /**
+     * @return the cols position, to pass to the {@link Row} getters. Look up once and keep
+     */
+    public int indexOf(String col)
+    {
+        for(int i = 0; i < mCols.length; i++)
+        {
+            if(mCols[i].equals(col))
+                return i;
+        }
+        throw new IllegalArgumentException("Unknown col " + col);
+    }
+
+    public int size()
+    {
+        return mCols.length;
+    }
+
+    /**
+     * @return a reader over the cursors current row, which follows the cursor as it moves
+     */
+    public Row bind(Cursor cursor)
+    {
+        return new Row(cursor, resolve(cursor));
+    }
+
+    /**
+     * Maps every row of the cursor, from the first. Does not close it
+     */
+    public <T> List<T> mapAll(Cursor cursor, RowMapper<T> mapper)
+    {
+        List<T> rows = new ArrayList<T>(Math.max(cursor.getCount(), 0));
+        Row row = bind(cursor);
+
+        cursor.moveToPosition(-1);
+        while(cursor.moveToNext())
+            rows.add(mapper.map(row));
+
+        return rows;
+    }
+
+    /**
+     * @return a mapper that copies each col into a {@link TypedRow} according to its declared type, for generic code
+     *         (export, diffing) that has no model class
+     */
+    public RowMapper<TypedRow> typedRowMapper()
+    {
+        return new RowMapper<TypedRow>()
+        {
+            @Override
+            public TypedRow map(Row row)
+            {
+                TypedRow typed = new TypedRow(mCols.length);
+                for(int i = 0; i < mCols.length; i++)
+                {
+                    if(!row.has(i) || row.isNull(i))
+                    {
+                        typed.mObjects[i] = TypedRow.NULL;
+                        continue;
+                    }
+
+                    switch(mTypes[i])
+                    {
+                        case INTEGER:
+                            typed.mValues[i] = row.getLong(i);
+                            break;
+                        case REAL:
+                            typed.mValues[i] = Double.doubleToRawLongBits(row.getDouble(i));
+                            break;
+                        case BLOB:
+                            typed.mObjects[i] = row.getBlob(i);
+                            break;
+                        default:
+                            typed.mObjects[i] = row.getString(i);
+                            break;
+                    }
+                }
+                return typed;
+            }
+        };
+    }
+
+    //============================================================================================================
+    // INTERNAL
+    //============================================================================================================
+
+    private int[] resolve(Cursor cursor)
+    {
+        String[] names = cursor.getColumnNames();
+        Shape shape = mShape;
+
+        //same cursor (or query) as last time is the common case, checked by reference then by value
+        if(null != shape && (shape.names == names || Arrays.equals(shape.names, names)))
+            return shape.indices;
+
+        int[] indices = new int[mCols.length];
+        for(int i = 0; i < mCols.length; i++)
+            indices[i] = find(names, mCols[i]);
+
+        mShape = new Shape(names, indices);
+        return indices;
+    }
+
+    private static int find(String[] names, String col)
+    {
+        for(int i = 0; i < names.length; i++)
+        {
+            if(names[i].equals(col))
+                return i;
+        }
+
+        //SQLite col names are case insensitive
+        for(int i = 0; i < names.length; i++)
+        {
+            if(names[i].equalsIgnoreCase(col))
+                return i;
+        }
+
+        return -1;
+    }
+
+    //============================================================================================================
+    // INNER CLASSES
+    //============================================================================================================
+
+    public interface RowMapper<T>
+    {
+        /**
+         * Called with the cursor on the row to map
+         */
+        T map(Row row);
+    }
+
+    /**
+     * A cursor plus its resolved col indices. The getters take the col position from {@link #indexOf(String)}
+     */
+    public static final class Row
+    {
+        private final Cursor mCursor;
+        private final int[] mIndices;
+
+        private Row(Cursor cursor, int[] indices)
+        {
+            mCursor = cursor;
+            mIndices = indices;
+        }
+
+        public Cursor getCursor()
+        {
+            return mCursor;
+        }
+
+        /**
+         * @return false if the col is not in the cursor
+         */
+        public boolean has(int col)
+        {
+            return mIndices[col] != -1;
+        }
+
+        public boolean isNull(int col)
+        {
+            return mCursor.isNull(mIndices[col]);
+        }
+
+        public long getLong(int col)
+        {
+            return mCursor.getLong(mIndices[col]);
+        }
+
+        public int getInt(int col)
+        {
+            return mCursor.getInt(mIndices[col]);
+        }
+
+        /**
+         * @return true for any non zero value
+         */
+        public boolean getBoolean(int col)
+        {
+            return mCursor.getInt(mIndices[col]) != 0;
+        }
+
+        public double getDouble(int col)
+        {
+            return mCursor.getDouble(mIndices[col]);
+        }
+
+        public float getFloat(int col)
+        {
+            return mCursor.getFloat(mIndices[col]);
+        }
+
+        public String getString(int col)
+        {
+            return mCursor.getString(mIndices[col]);
+        }
+
+        public byte[] getBlob(int col)
+        {
+            return mCursor.getBlob(mIndices[col]);
+        }
+    }
+
+    /**
+     * One row copied out of the cursor by {@link #typedRowMapper()}. INTEGER and REAL cols share a long[] (REALs as
+     * their bits) so neither is boxed, TEXT and BLOB cols are in an Object[]. Two arrays per row whatever the width
+     */
+    public static final class TypedRow
+    {
+        private static final Object NULL = new Object();
+
+        private final long[] mValues;
+        private final Object[] mObjects;
+
+        private TypedRow(int size)
+        {
+            mValues = new long[size];
+            mObjects = new Object[size];
+        }
+
+        public boolean isNull(int col)
+        {
+            return mObjects[col] == NULL;
+        }
+
+        /**
+         * @return 0 if null or not an INTEGER col
+         */
+        public long getLong(int col)
+        {
+            return mValues[col];
+        }
+
+        /**
+         * @return 0 if null or not a REAL col
+         */
+        public double getDouble(int col)
+        {
+            return Double.longBitsToDouble(mValues[col]);
+        }
+
+        /**
+         * @return null if null or not a TEXT col
+         */
+        public String getString(int col)
+        {
+            return mObjects[col] instanceof String ? (String) mObjects[col] : null;
+        }
+
+        /**
+         * @return null if null or not a BLOB col
+         */
+        public byte[] getBlob(int col)
+        {
+            return mObjects[col] instanceof byte[] ? (byte[]) mObjects[col] : null;
+        }
+    }
+
+    private static final class Shape
+    {
+        final String[] names;
+        final int[] indices;
+
+        Shape(String[] names, int[] indices)
+        {
+            this.names = names;
+            this.indices = indices;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.doridori.lib.db.utils;
+
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.SqlCreateBuilderException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declarative model of a whole database: its tables (as {@link SqlCreateStmtBuilder}s) and indexes (as
+ * {@link SqlCreateIndexBuilder}s). Keep one per schema version (e.g. a static schemaV3() method) and let
+ * {@link SchemaMigration#plan(DbSchema, DbSchema)} work out the upgrade instead of hand writing it:
+ *
+ * <pre>
+ * public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+ * {
+ *     SchemaMigration.plan(schemaFor(oldVersion), schemaFor(newVersion)).execute(db);
+ * }
+ * </pre>
+ *
+ * Table and index names are compared exactly, so keep their case the same between versions.
+ *
+ * @author dorian cussen
+ */
+public class DbSchema
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    private final Map<String, SqlCreateStmtBuilder> mTables = new LinkedHashMap<String, SqlCreateStmtBuilder>();
+    private final Map<String, SqlCreateIndexBuilder> mIndexes = new LinkedHashMap<String, SqlCreateIndexBuilder>();
+
+    //============================================================================================================
+    // BUILDING
+    //============================================================================================================
+
+    public DbSchema addTable(SqlCreateStmtBuilder table)
+    {
+        if(mTables.containsKey(table.getTableName()))
+            throw new SqlCreateBuilderException("Table " + table.getTableName() + " already added");
+
+        mTables.put(table.getTableName(), table);
+
+        return this;
+    }
+
+    /**
+     * @param index its table must have been added already
+     */
+    public DbSchema addIndex(SqlCreateIndexBuilder index)
+    {
+        if(!mTables.containsKey(index.getTableName()))
+            throw new SqlCreateBuilderException("Index " + index.getIndexName() + " is on unknown table " + index.getTableName());
+        if(mIndexes.containsKey(index.getIndexName()))
+            throw new SqlCreateBuilderException("Index " + index.getIndexName() + " already added");
+
+        mIndexes.put(index.getIndexName(), index);
+
+        return this;
+    }
+
+    //============================================================================================================
+    // GETTERS
+    //============================================================================================================
+
+    public Collection<SqlCreateStmtBuilder> getTables()
+    {
+        return Collections.unmodifiableCollection(mTables.values());
+    }
+
+    /**
+     * @return null if there is no table with this name
+     */
+    public SqlCreateStmtBuilder getTable(String tableName)
+    {
+        return mTables.get(tableName);
+    }
+
+    public Collection<SqlCreateIndexBuilder> getIndexes()
+    {
+        return Collections.unmodifiableCollection(mIndexes.values());
+    }
+
+    /**
+     * @return null if there is no index with this name
+     */
+    public SqlCreateIndexBuilder getIndex(String indexName)
+    {
+        return mIndexes.get(indexName);
+    }
+
+    public List<SqlCreateIndexBuilder> getIndexesOn(String tableName)
+    {
+        List<SqlCreateIndexBuilder> indexes = new ArrayList<SqlCreateIndexBuilder>();
+        for(SqlCreateIndexBuilder index : mIndexes.values())
+        {
+            if(index.getTableName().equals(tableName))
+                indexes.add(index);
+        }
+        return indexes;
+    }
+
+    /**
+     * @return every CREATE TABLE then every CREATE INDEX statement, for SQLiteOpenHelper.onCreate()
+     */
+    public List<String> getCreateStatements()
+    {
+        List<String> statements = new ArrayList<String>();
+        for(SqlCreateStmtBuilder table : mTables.values())
+            statements.add(table.build());
+        for(SqlCreateIndexBuilder index : mIndexes.values())
+            statements.add(index.build());
+        return statements;
+    }
+}
@@ -0,0 +1,347 @@
+package com.doridori.lib.db.utils;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.Col;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.NotNull;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.PrimaryKey;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.TableConstraint;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.Unique;
+import com.doridori.lib.util.XLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The steps needed to take a database from one {@link DbSchema} to another, touching only what changed:
+ *
+ * <ul>
+ * <li>new tables are created (with their indexes) and removed tables dropped</li>
+ * <li>a table that only gained columns SQLite can add in place (no PRIMARY KEY or UNIQUE, and NOT NULL only with a
+ * {@link SqlCreateStmtBuilder.Default}) gets an ALTER TABLE ADD COLUMN per column, which does not touch existing rows
+ * however big the table is</li>
+ * <li>any other table change (a col removed or its type / constraints changed, a table constraint or WITHOUT ROWID
+ * added or removed) rebuilds the table: create it under a temporary name, copy the cols both versions have, drop the
+ * old one and rename. Cols that are not copied get their DEFAULT (or NULL). Its indexes are then recreated</li>
+ * <li>indexes that were added, removed or changed on tables that were not rebuilt are created / dropped</li>
+ * </ul>
+ *
+ * Cols are matched by name, so reordering cols in the definition is not a change. A renamed col looks like a removed
+ * col plus a new one, so its data is not copied over.
+ *
+ * @author dorian cussen
+ */
+public class SchemaMigration
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    static final String REBUILD_SUFFIX = "__new";
+
+    private final List<Step> mSteps;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    private SchemaMigration(List<Step> steps)
+    {
+        mSteps = Collections.unmodifiableList(steps);
+    }
+
+    //============================================================================================================
+    // PLANNING
+    //============================================================================================================
+
+    /**
+     * @throws SqlCreateStmtBuilder.SqlCreateBuilderException if a NOT NULL col without a non NULL DEFAULT is added to
+     *                                                        an existing table, as its existing rows would have no value
+     *                                                        for it
+     */
+    public static SchemaMigration plan(DbSchema from, DbSchema to)
+    {
+        List<Step> steps = new ArrayList<Step>();
+
+        for(SqlCreateStmtBuilder newTable : to.getTables())
+        {
+            SqlCreateStmtBuilder oldTable = from.getTable(newTable.getTableName());
+            if(null != oldTable)
+                checkAddedCols(oldTable, newTable);
+        }
+
+        //tables dropped, created or rebuilt take their indexes with them
+        Set<String> replacedTables = new HashSet<String>();
+
+        for(SqlCreateStmtBuilder oldTable : from.getTables())
+        {
+            if(null == to.getTable(oldTable.getTableName()))
+                replacedTables.add(oldTable.getTableName());
+        }
+
+        for(SqlCreateStmtBuilder newTable : to.getTables())
+        {
+            SqlCreateStmtBuilder oldTable = from.getTable(newTable.getTableName());
+            if(null == oldTable || needsRebuild(oldTable, newTable))
+                replacedTables.add(newTable.getTableName());
+        }
+
+        //changed and removed indexes first, so a changed index can be recreated under the same name
+        for(SqlCreateIndexBuilder oldIndex : from.getIndexes())
+        {
+            if(replacedTables.contains(oldIndex.getTableName()))
+                continue;
+
+            SqlCreateIndexBuilder newIndex = to.getIndex(oldIndex.getIndexName());
+            if(null == newIndex || !newIndex.build().equals(oldIndex.build()))
+                steps.add(new Step("drop index " + oldIndex.getIndexName(), "DROP INDEX " + oldIndex.getIndexName() + ";"));
+        }
+
+        for(SqlCreateStmtBuilder oldTable : from.getTables())
+        {
+            if(null == to.getTable(oldTable.getTableName()))
+                steps.add(new Step("drop table " + oldTable.getTableName(), "DROP TABLE " + oldTable.getTableName() + ";"));
+        }
+
+        for(SqlCreateStmtBuilder newTable : to.getTables())
+        {
+            SqlCreateStmtBuilder oldTable = from.getTable(newTable.getTableName());
+            if(null == oldTable)
+                steps.add(createTable(to, newTable));
+            else if(replacedTables.contains(newTable.getTableName()))
+                steps.add(rebuildTable(to, oldTable, newTable));
+            else
+            {
+                Step addCols = addCols(oldTable, newTable);
+                if(null != addCols)
+                    steps.add(addCols);
+            }
+        }
+
+        for(SqlCreateIndexBuilder newIndex : to.getIndexes())
+        {
+            if(replacedTables.contains(newIndex.getTableName()))
+                continue;
+
+            SqlCreateIndexBuilder oldIndex = from.getIndex(newIndex.getIndexName());
+            if(null == oldIndex || !newIndex.build().equals(oldIndex.build()))
+                steps.add(new Step("create index " + newIndex.getIndexName(), newIndex.build()));
+        }
+
+        return new SchemaMigration(steps);
+    }
+
+    /**
+     * @return true unless every old col is still there unchanged and every new col can be added with ALTER TABLE
+     */
+    private static boolean needsRebuild(SqlCreateStmtBuilder oldTable, SqlCreateStmtBuilder newTable)
+    {
+        if(oldTable.isWithoutRowId() != newTable.isWithoutRowId())
+            return true;
+        if(!constraintsSql(oldTable).equals(constraintsSql(newTable)))
+            return true;
+
+        for(Col oldCol : oldTable.getCols())
+        {
+            Col newCol = newTable.getCol(oldCol.name);
+            if(null == newCol || !newCol.isSameDefinition(oldCol))
+                return true;
+        }
+
+        for(Col newCol : newTable.getCols())
+        {
+            if(null == oldTable.getCol(newCol.name) && !canAddCol(newCol))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static void checkAddedCols(SqlCreateStmtBuilder oldTable, SqlCreateStmtBuilder newTable)
+    {
+        for(Col newCol : newTable.getCols())
+        {
+            if(null != oldTable.getCol(newCol.name))
+                continue;
+
+            //an INTEGER PRIMARY KEY is the rowid, which every row already has
+            boolean rowId = newCol.type == SQLiteDataTypes.INTEGER && newCol.hasConstraint(PrimaryKey.class);
+            if(newCol.hasConstraint(NotNull.class) && !newCol.hasNonNullDefault() && !rowId)
+                throw new SqlCreateStmtBuilder.SqlCreateBuilderException("Can not add NOT NULL col " + newTable.getTableName() + "." + newCol.name + " to an existing table without a Default");
+        }
+    }
+
+    private static List<String> constraintsSql(SqlCreateStmtBuilder table)
+    {
+        List<String> sql = new ArrayList<String>();
+        for(TableConstraint constraint : table.getConstraints())
+            sql.add(constraint.toSql());
+        return sql;
+    }
+
+    /**
+     * See the restrictions at <a href="http://www.sqlite.org/lang_altertable.html">http://www.sqlite.org/lang_altertable.html</a>
+     */
+    private static boolean canAddCol(Col col)
+    {
+        return !col.hasConstraint(PrimaryKey.class) &&
+                !col.hasConstraint(Unique.class) &&
+                (!col.hasConstraint(NotNull.class) || col.hasNonNullDefault());
+    }
+
+    private static Step createTable(DbSchema schema, SqlCreateStmtBuilder table)
+    {
+        List<String> sql = new ArrayList<String>();
+        sql.add(table.build());
+        for(SqlCreateIndexBuilder index : schema.getIndexesOn(table.getTableName()))
+            sql.add(index.build());
+
+        return new Step("create table " + table.getTableName(), sql);
+    }
+
+    /**
+     * @return null if no cols were added
+     */
+    private static Step addCols(SqlCreateStmtBuilder oldTable, SqlCreateStmtBuilder newTable)
+    {
+        List<String> sql = new ArrayList<String>();
+        for(Col newCol : newTable.getCols())
+        {
+            if(null == oldTable.getCol(newCol.name))
+                sql.add("ALTER TABLE " + newTable.getTableName() + " ADD COLUMN " + newCol.toSQL() + ";");
+        }
+
+        if(sql.isEmpty())
+            return null;
+
+        return new Step("add " + sql.size() + " cols to " + newTable.getTableName(), sql);
+    }
+
+    private static Step rebuildTable(DbSchema schema, SqlCreateStmtBuilder oldTable, SqlCreateStmtBuilder newTable)
+    {
+        String tableName = newTable.getTableName();
+        String tempName = tableName + REBUILD_SUFFIX;
+
+        StringBuilder commonCols = new StringBuilder();
+        for(Col newCol : newTable.getCols())
+        {
+            if(null == oldTable.getCol(newCol.name))
+                continue;
+
+            if(commonCols.length() > 0)
+                commonCols.append(", ");
+            commonCols.append(newCol.name);
+        }
+
+        List<String> sql = new ArrayList<String>();
+        sql.add(newTable.build(tempName));
+        if(commonCols.length() > 0)
+            sql.add("INSERT INTO " + tempName + " (" + commonCols + ") SELECT " + commonCols + " FROM " + tableName + ";");
+        sql.add("DROP TABLE " + tableName + ";");
+        sql.add("ALTER TABLE " + tempName + " RENAME TO " + tableName + ";");
+        for(SqlCreateIndexBuilder index : schema.getIndexesOn(tableName))
+            sql.add(index.build());
+
+        return new Step("rebuild table " + tableName, sql);
+    }
+
+    //============================================================================================================
+    // RUNNING
+    //============================================================================================================
+
+    public List<Step> getSteps()
+    {
+        return mSteps;
+    }
+
+    public boolean isEmpty()
+    {
+        return mSteps.isEmpty();
+    }
+
+    /**
+     * Runs every step in one transaction, so either all of the upgrade happens or none of it. Fine to call from
+     * SQLiteOpenHelper.onUpgrade() where a transaction is already open (it nests). If foreign keys are enabled turn them
+     * off first, as a rebuild drops the old table.
+     *
+     * @return how long each step took, also logged at info
+     * @throws android.database.SQLException if a step fails, nothing will have been changed
+     */
+    public List<StepTiming> execute(SQLiteDatabase db)
+    {
+        List<StepTiming> timings = new ArrayList<StepTiming>(mSteps.size());
+
+        db.beginTransaction();
+        try
+        {
+            for(Step step : mSteps)
+            {
+                long start = System.nanoTime();
+                for(String sql : step.sql)
+                    db.execSQL(sql);
+
+                long durationMs = (System.nanoTime() - start) / 1000000;
+                timings.add(new StepTiming(step, durationMs));
+                XLog.i("{} took {}ms", step.description, durationMs);
+            }
+
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
+
+        return timings;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        for(Step step : mSteps)
+        {
+            builder.append("-- ").append(step.description).append('\n');
+            for(String sql : step.sql)
+                builder.append(sql).append('\n');
+        }
+        return builder.toString();
+    }
+
+    //============================================================================================================
+    // INNER CLASSES
+    //============================================================================================================
+
+    public static class Step
+    {
+        public final String description;
+        public final List<String> sql;
+
+        Step(String description, String... sql)
+        {
+            this(description, Arrays.asList(sql));
+        }
+
+        Step(String description, List<String> sql)
+        {
+            this.description = description;
+            this.sql = Collections.unmodifiableList(sql);
+        }
+    }
+
+    public static class StepTiming
+    {
+        public final Step step;
+        public final long durationMs;
+
+        StepTiming(Step step, long durationMs)
+        {
+            this.step = step;
+            this.durationMs = durationMs;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.doridori.lib.db.utils;
+
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.SqlCreateBuilderException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Companion to {@link SqlCreateStmtBuilder} for CREATE INDEX statements. Has a fluid interface. See <a href="http://www.sqlite.org/lang_createindex.html">http://www.sqlite.org/lang_createindex.html</a>
+ *
+ * Index the cols a query filters on with equality first, then the one it sorts or ranges on. To make a covering index
+ * (answers the query from the index alone, with no lookup into the table per row) also add the cols it selects with
+ * {@link #covering(String...)}. Check with EXPLAIN QUERY PLAN, which should say "USING COVERING INDEX" or
+ * "USING INDEX" rather than "SCAN".
+ *
+ * @author dorian cussen
+ */
+public class SqlCreateIndexBuilder
+{
+    public static final String CREATE_INDEX = "CREATE INDEX ";
+    public static final String CREATE_UNIQUE_INDEX = "CREATE UNIQUE INDEX ";
+
+    private final String mIndexName;
+    private final String mTableName;
+    private final List<String> mCols = new ArrayList<String>();
+    private final List<String> mCoveringCols = new ArrayList<String>();
+    private boolean mUnique;
+    private String mWhere;
+
+    public SqlCreateIndexBuilder(String indexName, String tableName)
+    {
+        if(null == indexName || null == tableName)
+            throw new SqlCreateBuilderException("Index and table name must not be null");
+
+        mIndexName = indexName;
+        mTableName = tableName;
+    }
+
+    public SqlCreateIndexBuilder unique()
+    {
+        mUnique = true;
+
+        return this;
+    }
+
+    /**
+     * @param name col name in the order they should be indexed
+     */
+    public SqlCreateIndexBuilder addCol(String name)
+    {
+        mCols.add(name);
+
+        return this;
+    }
+
+    public SqlCreateIndexBuilder addColDesc(String name)
+    {
+        mCols.add(name + " DESC");
+
+        return this;
+    }
+
+    /**
+     * @param cols only selected by the queries this index is for, added after the indexed cols. They make the index
+     *             bigger and slower to write. SQLite has no INCLUDE so they are part of the key, which means covering
+     *             a unique index changes what is unique
+     */
+    public SqlCreateIndexBuilder covering(String... cols)
+    {
+        for(String col : cols)
+            mCoveringCols.add(col);
+
+        return this;
+    }
+
+    /**
+     * Makes this a partial index, only rows matching the expression are indexed e.g. "unread = 1". Smaller and cheaper
+     * to maintain than a full index when queries only ever want a small subset of rows, but a query only uses it if
+     * its WHERE clause implies this expression, so use the same terms. Needs SQLite 3.8.0 (Android 5.0, API 21). See <a href="http://www.sqlite.org/partialindex.html">http://www.sqlite.org/partialindex.html</a>
+     *
+     * @param expression sql without the WHERE
+     */
+    public SqlCreateIndexBuilder where(String expression)
+    {
+        mWhere = expression;
+
+        return this;
+    }
+
+    public String getIndexName()
+    {
+        return mIndexName;
+    }
+
+    public String getTableName()
+    {
+        return mTableName;
+    }
+
+    public String build()
+    {
+        if(mCols.size() == 0)
+            throw new SqlCreateBuilderException("You need to supply some columns!");
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(mUnique ? CREATE_UNIQUE_INDEX : CREATE_INDEX);
+        builder.append(mIndexName);
+        builder.append(" ON ");
+        builder.append(mTableName);
+        builder.append(" (");
+
+        for(int i = 0; i < mCols.size(); i++)
+        {
+            if(i > 0)
+                builder.append(", ");
+
+            builder.append(mCols.get(i));
+        }
+
+        for(String col : mCoveringCols)
+        {
+            builder.append(", ");
+            builder.append(col);
+        }
+
+        builder.append(")");
+        if(null != mWhere)
+        {
+            builder.append(" WHERE ");
+            builder.append(mWhere);
+        }
+
+        builder.append(";");
+        return builder.toString();
+    }
+}
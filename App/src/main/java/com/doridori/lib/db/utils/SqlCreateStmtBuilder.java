@@ -1,11 +1,17 @@
 package com.doridori.lib.db.utils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Class to make it easier to construct CREATE statements. See corresponding test class to see usages. Has a fluid interface. See <a href="http://www.sqlite.org/lang_createtable.html">http://www.sqlite.org/lang_createtable.html</a>
  *
+ * Table level constraints (e.g. a composite primary key with {@link TablePrimaryKey}) are added with
+ * {@link #addConstraint(TableConstraint)}, and secondary indexes with {@link SqlCreateIndexBuilder}.
+ *
+ * Also used as the table definition in a {@link DbSchema}, so upgrades can be planned with {@link SchemaMigration}
+ *
  * User: doriancussen
  */
 public class SqlCreateStmtBuilder
@@ -22,9 +28,12 @@ public class SqlCreateStmtBuilder
     }
 
     public static final String CREATE_TABLE = "CREATE TABLE ";
+    public static final String WITHOUT_ROWID = " WITHOUT ROWID";
 
     private final String mTableName;
     private List<Col> mCols = new ArrayList<Col>();
+    private List<TableConstraint> mConstraints = new ArrayList<TableConstraint>();
+    private boolean mWithoutRowId;
 
     public SqlCreateStmtBuilder(String tableName)
     {
@@ -41,14 +50,79 @@ public class SqlCreateStmtBuilder
         return this;
     }
 
+    /**
+     * For constraints over more than one col. Written after the cols in the order added
+     */
+    public SqlCreateStmtBuilder addConstraint(TableConstraint tableConstraint)
+    {
+        mConstraints.add(tableConstraint);
+
+        return this;
+    }
+
+    /**
+     * Stores rows in the primary key b-tree rather than by rowid, which saves a lookup and the space of a separate
+     * index for tables only ever read by their (usually composite, non integer) primary key. The table must have a
+     * primary key and it can not be AUTOINCREMENT. Needs SQLite 3.8.2 (Android 5.0, API 21). See <a href="http://www.sqlite.org/withoutrowid.html">http://www.sqlite.org/withoutrowid.html</a>
+     */
+    public SqlCreateStmtBuilder withoutRowId()
+    {
+        mWithoutRowId = true;
+
+        return this;
+    }
+
+    public String getTableName()
+    {
+        return mTableName;
+    }
+
+    public List<Col> getCols()
+    {
+        return Collections.unmodifiableList(mCols);
+    }
+
+    /**
+     * @return null if there is no col with this name
+     */
+    public Col getCol(String name)
+    {
+        for(Col col : mCols)
+        {
+            if(col.name.equals(name))
+                return col;
+        }
+        return null;
+    }
+
+    public List<TableConstraint> getConstraints()
+    {
+        return Collections.unmodifiableList(mConstraints);
+    }
+
+    public boolean isWithoutRowId()
+    {
+        return mWithoutRowId;
+    }
+
     public String build()
+    {
+        return build(mTableName);
+    }
+
+    /**
+     * @param tableName used instead of this tables name, for rebuilding a table under a temporary name
+     */
+    String build(String tableName)
     {
         if(mCols.size() == 0)
             throw new SqlCreateBuilderException("You need to supply some columns!");
+        if(mWithoutRowId)
+            checkWithoutRowId();
 
         StringBuilder builder = new StringBuilder();
         builder.append(CREATE_TABLE);
-        builder.append(mTableName);
+        builder.append(tableName);
         builder.append(" (");
 
         for(int i = 0; i < mCols.size(); i++)
@@ -59,14 +133,51 @@ public class SqlCreateStmtBuilder
             builder.append(mCols.get(i).toSQL());
         }
 
-        builder.append(");");
+        for(TableConstraint constraint : mConstraints)
+        {
+            builder.append(", ");
+            builder.append(constraint.toSql());
+        }
+
+        builder.append(")");
+        if(mWithoutRowId)
+            builder.append(WITHOUT_ROWID);
+
+        builder.append(";");
         return builder.toString();
     }
 
-    private class Col
+    private void checkWithoutRowId()
     {
-        final String name;
-        final SQLiteDataTypes type;
+        boolean hasPrimaryKey = false;
+        for(Col col : mCols)
+        {
+            for(CreateConstraint constraint : col.createConstraints)
+            {
+                if(constraint instanceof PrimaryKey)
+                {
+                    if(((PrimaryKey) constraint).isAutoIncrement())
+                        throw new SqlCreateBuilderException("WITHOUT ROWID tables can not use AUTOINCREMENT");
+
+                    hasPrimaryKey = true;
+                }
+            }
+        }
+
+        for(TableConstraint constraint : mConstraints)
+        {
+            if(constraint instanceof TablePrimaryKey)
+                hasPrimaryKey = true;
+        }
+
+        if(!hasPrimaryKey)
+            throw new SqlCreateBuilderException("WITHOUT ROWID tables need a PRIMARY KEY");
+    }
+
+    public static class Col
+    {
+        public final String name;
+        public final SQLiteDataTypes type;
         final CreateConstraint[] createConstraints;
 
         private Col(String name, SQLiteDataTypes type, CreateConstraint[] createConstraints)
@@ -76,7 +187,51 @@ public class SqlCreateStmtBuilder
             this.createConstraints = createConstraints;
         }
 
-        private String toSQL()
+        /**
+         * Constraints are compared by their sql, so two cols are the same if they would be created the same
+         */
+        public boolean isSameDefinition(Col other)
+        {
+            return toSQL().equals(other.toSQL());
+        }
+
+        public boolean hasConstraint(Class<? extends CreateConstraint> type)
+        {
+            for(CreateConstraint constraint : createConstraints)
+            {
+                if(type.isInstance(constraint))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return true if the col has a {@link Default} other than NULL
+         */
+        public boolean hasNonNullDefault()
+        {
+            for(CreateConstraint constraint : createConstraints)
+            {
+                if(constraint instanceof Default && !((Default) constraint).isNull())
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return true for an INTEGER PRIMARY KEY AUTOINCREMENT col, which SQLite fills in on insert
+         */
+        public boolean isAutoIncrement()
+        {
+            for(CreateConstraint constraint : createConstraints)
+            {
+                if(constraint instanceof PrimaryKey && ((PrimaryKey) constraint).isAutoIncrement())
+                    return true;
+            }
+            return false;
+        }
+
+        String toSQL()
         {
             StringBuilder builder = new StringBuilder();
             builder.append(name);
@@ -103,6 +258,14 @@ public class SqlCreateStmtBuilder
 
 
 
+    /**
+     * <a href="http://www.sqlite.org/syntaxdiagrams.html#table-constraint">http://www.sqlite.org/syntaxdiagrams.html#table-constraint</a>
+     */
+    public interface TableConstraint
+    {
+        public String toSql();
+    }
+
     /**
      * implemented as a seperate class as each constraint is build differently. <a href="http://www.sqlite.org/syntaxdiagrams.html#column-constraint">http://www.sqlite.org/syntaxdiagrams.html#column-constraint</a>
      */
@@ -116,6 +279,45 @@ public class SqlCreateStmtBuilder
         //may want to add a conflict clause
     }
 
+    /**
+     * DEFAULT value, used for rows inserted without the col and for the existing rows when the col is added to a table
+     * by a {@link SchemaMigration}. A NOT NULL col needs one to be added to a table that may already have rows.
+     * <a href="http://www.sqlite.org/lang_createtable.html#dfltval">http://www.sqlite.org/lang_createtable.html#dfltval</a>
+     */
+    public static class Default implements CreateConstraint
+    {
+        private final String mValue;
+
+        public Default(long value)
+        {
+            mValue = Long.toString(value);
+        }
+
+        public Default(double value)
+        {
+            mValue = Double.toString(value);
+        }
+
+        /**
+         * @param value a TEXT value, quoted here. Null for DEFAULT NULL
+         */
+        public Default(String value)
+        {
+            mValue = null == value ? "NULL" : "'" + value.replace("'", "''") + "'";
+        }
+
+        public boolean isNull()
+        {
+            return mValue.equals("NULL");
+        }
+
+        @Override
+        public String toSql()
+        {
+            return "DEFAULT " + mValue;
+        }
+    }
+
     public static class PrimaryKey implements CreateConstraint
     {
         private final boolean mAutoIncrement;
@@ -125,6 +327,11 @@ public class SqlCreateStmtBuilder
             mAutoIncrement = autoIncrement;
         }
 
+        public boolean isAutoIncrement()
+        {
+            return mAutoIncrement;
+        }
+
         @Override
         public String toSql()
         {
@@ -161,8 +368,85 @@ public class SqlCreateStmtBuilder
         }
     }
 
-    public class SqlCreateBuilderException extends RuntimeException
+    /**
+     * PRIMARY KEY over one or more cols e.g. (user_id, group_id). Use the col level {@link PrimaryKey} for a single
+     * INTEGER PRIMARY KEY (the rowid alias)
+     */
+    public static class TablePrimaryKey implements TableConstraint
+    {
+        private final ConflictClause mClause;
+        private final String[] mCols;
+
+        /**
+         * @param clause can be null
+         */
+        public TablePrimaryKey(ConflictClause clause, String... cols)
+        {
+            if(cols.length == 0)
+                throw new SqlCreateBuilderException("You need to supply some columns!");
+
+            mClause = clause;
+            mCols = cols;
+        }
+
+        @Override
+        public String toSql()
+        {
+            return colsToSql("PRIMARY KEY", mCols, mClause);
+        }
+    }
+
+    /**
+     * UNIQUE over one or more cols. SQLite backs this with an automatic index, so there is no need for a separate
+     * unique index on the same cols
+     */
+    public static class TableUnique implements TableConstraint
     {
+        private final ConflictClause mClause;
+        private final String[] mCols;
+
+        /**
+         * @param clause can be null
+         */
+        public TableUnique(ConflictClause clause, String... cols)
+        {
+            if(cols.length == 0)
+                throw new SqlCreateBuilderException("You need to supply some columns!");
+
+            mClause = clause;
+            mCols = cols;
+        }
+
+        @Override
+        public String toSql()
+        {
+            return colsToSql("UNIQUE", mCols, mClause);
+        }
+    }
+
+    private static String colsToSql(String constraint, String[] cols, ConflictClause clause)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(constraint);
+        builder.append(" (");
+        for(int i = 0; i < cols.length; i++)
+        {
+            if(i > 0)
+                builder.append(", ");
+
+            builder.append(cols[i]);
+        }
+        builder.append(")");
+        if(null != clause)
+            builder.append(clause.toString());
+
+        return builder.toString();
+    }
+
+    public static class SqlCreateBuilderException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
         public SqlCreateBuilderException(String detailMessage)
         {
             super(detailMessage);
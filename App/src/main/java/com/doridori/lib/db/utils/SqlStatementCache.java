@@ -0,0 +1,111 @@
+package com.doridori.lib.db.utils;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of compiled statements for one database, keyed by their sql, so statements built with
+ * {@link SqlWriteStmtBuilder} are only compiled once rather than on every insert (which is what
+ * SQLiteDatabase.insert(ContentValues) does).
+ *
+ * Not thread safe, and neither are the statements it hands out (their bindings are shared state), so use one cache
+ * per thread - usually just the thread that does the db writes. Close it before closing the database.
+ *
+ * @author dorian cussen
+ */
+public class SqlStatementCache
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    private final SQLiteDatabase mDb;
+    private final Map<String, SQLiteStatement> mStatements;
+    private long mHits;
+    private long mMisses;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    public SqlStatementCache(SQLiteDatabase db)
+    {
+        this(db, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize statements kept compiled, the least recently used is closed when another is needed
+     */
+    public SqlStatementCache(SQLiteDatabase db, final int maxSize)
+    {
+        if(maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be >= 1");
+
+        mDb = db;
+        mStatements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest)
+            {
+                if(size() <= maxSize)
+                    return false;
+
+                eldest.getValue().close();
+                return true;
+            }
+        };
+    }
+
+    //============================================================================================================
+    // PUBLIC
+    //============================================================================================================
+
+    /**
+     * @return the compiled statement, with whatever bindings it was last left with. Do not close it
+     */
+    public SQLiteStatement get(String sql)
+    {
+        SQLiteStatement statement = mStatements.get(sql);
+        if(null != statement)
+        {
+            mHits++;
+            return statement;
+        }
+
+        mMisses++;
+        statement = mDb.compileStatement(sql);
+        mStatements.put(sql, statement);
+        return statement;
+    }
+
+    public SQLiteDatabase getDatabase()
+    {
+        return mDb;
+    }
+
+    public long getHitCount()
+    {
+        return mHits;
+    }
+
+    public long getMissCount()
+    {
+        return mMisses;
+    }
+
+    /**
+     * Closes every cached statement. The cache can still be used after, statements are compiled again as needed
+     */
+    public void close()
+    {
+        for(SQLiteStatement statement : mStatements.values())
+            statement.close();
+
+        mStatements.clear();
+    }
+}
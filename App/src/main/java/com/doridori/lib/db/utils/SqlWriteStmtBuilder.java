@@ -0,0 +1,204 @@
+package com.doridori.lib.db.utils;
+
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.Col;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.ConflictClause;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder.SqlCreateBuilderException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Companion to {@link SqlCreateStmtBuilder} that builds parameterized INSERT / UPSERT / UPDATE statements from the same
+ * table definition, for compiling once with {@link SqlStatementCache} and running many rows through with
+ * {@link BatchWriter}. Has a fluid interface.
+ *
+ * Binds are in the order of {@link #getCols()} (all cols except an AUTOINCREMENT key unless set with
+ * {@link #setCols(String...)}), use {@link #getBindIndex(String)} rather than counting by hand.
+ *
+ * @author dorian cussen
+ */
+public class SqlWriteStmtBuilder
+{
+    private final SqlCreateStmtBuilder mTable;
+    private List<String> mCols = new ArrayList<String>();
+
+    public SqlWriteStmtBuilder(SqlCreateStmtBuilder table)
+    {
+        mTable = table;
+
+        for(Col col : table.getCols())
+        {
+            if(!col.isAutoIncrement())
+                mCols.add(col.name);
+        }
+    }
+
+    /**
+     * @param cols the cols to write, in bind order. Must be cols of the table
+     */
+    public SqlWriteStmtBuilder setCols(String... cols)
+    {
+        for(String col : cols)
+            checkCol(col);
+
+        mCols = new ArrayList<String>(Arrays.asList(cols));
+
+        return this;
+    }
+
+    public List<String> getCols()
+    {
+        return Collections.unmodifiableList(mCols);
+    }
+
+    /**
+     * @return the 1 based bind index of the col in INSERT, UPSERT and UPDATE SET statements
+     */
+    public int getBindIndex(String col)
+    {
+        int index = mCols.indexOf(col);
+        if(index == -1)
+            throw new SqlCreateBuilderException("Col " + col + " is not written by this builder");
+
+        return index + 1;
+    }
+
+    public String buildInsert()
+    {
+        return buildInsert(null);
+    }
+
+    /**
+     * @param clause if not null becomes INSERT OR REPLACE / IGNORE etc. OR REPLACE deletes the existing row (firing
+     *               deletes and giving it a new rowid), see {@link #buildUpsert(String...)} to update it in place
+     */
+    public String buildInsert(ConflictClause clause)
+    {
+        checkCols();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("INSERT ");
+        if(null != clause)
+            builder.append("OR ").append(clause.name()).append(' ');
+
+        appendInsertInto(builder);
+        builder.append(";");
+        return builder.toString();
+    }
+
+    /**
+     * INSERT ... ON CONFLICT (conflictCols) DO UPDATE SET, so an existing row is updated in place. The other written
+     * cols are updated from the new row. Needs SQLite 3.24 (Android 11, API 30), use {@link #buildInsert(ConflictClause)}
+     * with REPLACE before that
+     *
+     * @param conflictCols the cols of the primary key or a unique constraint / index
+     */
+    public String buildUpsert(String... conflictCols)
+    {
+        checkCols();
+        if(conflictCols.length == 0)
+            throw new SqlCreateBuilderException("You need to supply the conflict columns!");
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("INSERT ");
+        appendInsertInto(builder);
+        builder.append(" ON CONFLICT (");
+        appendList(builder, Arrays.asList(conflictCols), "");
+        builder.append(")");
+
+        List<String> updateCols = new ArrayList<String>(mCols);
+        updateCols.removeAll(Arrays.asList(conflictCols));
+        if(updateCols.isEmpty())
+        {
+            builder.append(" DO NOTHING;");
+            return builder.toString();
+        }
+
+        builder.append(" DO UPDATE SET ");
+        for(int i = 0; i < updateCols.size(); i++)
+        {
+            if(i > 0)
+                builder.append(", ");
+
+            builder.append(updateCols.get(i)).append(" = excluded.").append(updateCols.get(i));
+        }
+
+        builder.append(";");
+        return builder.toString();
+    }
+
+    /**
+     * UPDATE ... SET (written cols) WHERE (whereCols) = ?. The where cols are bound after the set cols, at
+     * {@link #getCols()}.size() + 1 onwards, and should not be written cols themselves
+     */
+    public String buildUpdate(String... whereCols)
+    {
+        checkCols();
+        if(whereCols.length == 0)
+            throw new SqlCreateBuilderException("You need to supply the where columns!");
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("UPDATE ");
+        builder.append(mTable.getTableName());
+        builder.append(" SET ");
+        appendList(builder, mCols, " = ?");
+        builder.append(" WHERE ");
+
+        for(int i = 0; i < whereCols.length; i++)
+        {
+            checkCol(whereCols[i]);
+
+            if(i > 0)
+                builder.append(" AND ");
+
+            builder.append(whereCols[i]).append(" = ?");
+        }
+
+        builder.append(";");
+        return builder.toString();
+    }
+
+    private void appendInsertInto(StringBuilder builder)
+    {
+        builder.append("INTO ");
+        builder.append(mTable.getTableName());
+        builder.append(" (");
+        appendList(builder, mCols, "");
+        builder.append(") VALUES (");
+
+        for(int i = 0; i < mCols.size(); i++)
+        {
+            if(i > 0)
+                builder.append(", ");
+
+            builder.append('?');
+        }
+
+        builder.append(")");
+    }
+
+    private static void appendList(StringBuilder builder, List<String> cols, String suffix)
+    {
+        for(int i = 0; i < cols.size(); i++)
+        {
+            if(i > 0)
+                builder.append(", ");
+
+            builder.append(cols.get(i)).append(suffix);
+        }
+    }
+
+    private void checkCols()
+    {
+        if(mCols.size() == 0)
+            throw new SqlCreateBuilderException("You need to supply some columns!");
+    }
+
+    private void checkCol(String col)
+    {
+        if(null == mTable.getCol(col))
+            throw new SqlCreateBuilderException("Table " + mTable.getTableName() + " has no col " + col);
+    }
+}
@@ -0,0 +1,164 @@
+package com.doridori.lib.io.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes a gzip or deflate response body, but only opens the decoder on the first read. GZIPInputStream reads the
+ * header in its constructor so an empty body sent with a gzip Content-Encoding (common on errors and redirects) would
+ * throw EOFException before anyone looked at the status code. Here an empty body just reads as empty.
+ *
+ * "deflate" should be zlib wrapped but some servers send raw deflate, so which one it is is worked out from the first
+ * two bytes.
+ *
+ * Closing always closes the wrapped stream, even if nothing was read.
+ *
+ * @author dorian cussen
+ */
+class DecodingInputStream extends InputStream
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    private final PushbackInputStream mIn;
+    private final boolean mGzip;
+    private InputStream mDecoder;
+    private Inflater mRawInflater;
+    private boolean mClosed = false;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * @param contentEncoding the Content-Encoding header, can be null
+     * @return a stream that decodes gzip / deflate bodies, or the passed stream for anything else
+     */
+    @NotNull
+    static InputStream wrap(@NotNull InputStream in, @Nullable String contentEncoding)
+    {
+        if ("gzip".equalsIgnoreCase(contentEncoding))
+            return new DecodingInputStream(in, true);
+        else if ("deflate".equalsIgnoreCase(contentEncoding))
+            return new DecodingInputStream(in, false);
+        else
+            return in;
+    }
+
+    private DecodingInputStream(@NotNull InputStream in, boolean gzip)
+    {
+        mIn = new PushbackInputStream(in, 2);
+        mGzip = gzip;
+    }
+
+    //============================================================================================================
+    // INPUT STREAM
+    //============================================================================================================
+
+    @Override
+    public int read() throws IOException
+    {
+        return decoder().read();
+    }
+
+    @Override
+    public int read(@NotNull byte[] buffer, int offset, int length) throws IOException
+    {
+        return decoder().read(buffer, offset, length);
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        return decoder().skip(n);
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return null == mDecoder ? 0 : mDecoder.available();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (mClosed)
+            return;
+
+        mClosed = true;
+        try
+        {
+            if (null != mDecoder)
+                mDecoder.close();
+        }
+        finally
+        {
+            //an Inflater we pass in is not ended by InflaterInputStream
+            if (null != mRawInflater)
+                mRawInflater.end();
+
+            mIn.close();
+        }
+    }
+
+    //============================================================================================================
+    // INTERNAL
+    //============================================================================================================
+
+    private InputStream decoder() throws IOException
+    {
+        if (mClosed)
+            throw new IOException("Stream closed");
+
+        if (null != mDecoder)
+            return mDecoder;
+
+        byte[] head = new byte[2];
+        int count = 0;
+        int read;
+        while (count < head.length && (read = mIn.read(head, count, head.length - count)) != -1)
+            count += read;
+
+        if (count == 0)
+        {
+            mDecoder = new ByteArrayInputStream(head, 0, 0);
+            return mDecoder;
+        }
+
+        mIn.unread(head, 0, count);
+
+        if (mGzip)
+        {
+            mDecoder = new GZIPInputStream(mIn);
+        }
+        else if (count == head.length && isZlibHeader(head[0], head[1]))
+        {
+            mDecoder = new InflaterInputStream(mIn);
+        }
+        else
+        {
+            mRawInflater = new Inflater(true);
+            mDecoder = new InflaterInputStream(mIn, mRawInflater);
+        }
+
+        return mDecoder;
+    }
+
+    /**
+     * RFC 1950 - compression method 8 and the two header bytes a multiple of 31. Raw deflate would have to start with
+     * a non final stored block and happen to pass the check as well, so this is good enough to tell them apart
+     */
+    private static boolean isZlibHeader(byte cmf, byte flg)
+    {
+        return (cmf & 0x0F) == 8 && (((cmf & 0xFF) << 8) | (flg & 0xFF)) % 31 == 0;
+    }
+}
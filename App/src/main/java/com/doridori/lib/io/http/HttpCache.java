@@ -0,0 +1,77 @@
+package com.doridori.lib.io.http;
+
+import android.content.Context;
+
+import com.doridori.lib.util.XLog;
+import com.squareup.okhttp.HttpResponseCache;
+import com.squareup.okhttp.OkHttpClient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Sets up an on-disk http response cache for an {@link OkHttpClient}, which can then be passed to
+ * {@link HttpClient#HttpClient(HttpMethodsHelper.DefaultConnectionConfig, com.squareup.okhttp.OkHttpClient)}.
+ * Uses OkHttps {@link HttpResponseCache} which
+ *
+ * <ul>
+ *     <li>honours Cache-Control and Expires so fresh responses are served without touching the network</li>
+ *     <li>stores ETag / Last-Modified and revalidates stale entries with If-None-Match / If-Modified-Since, serving the
+ *     cached body on a 304</li>
+ *     <li>evicts least recently used entries once over its byte budget</li>
+ * </ul>
+ *
+ * Call {@link #install(android.content.Context, com.squareup.okhttp.OkHttpClient, long)} once from
+ * Application.onCreate() and enable caching on the {@link HttpMethodsHelper.DefaultConnectionConfig} used for your calls
+ * (it is off by default).
+ *
+ * Note this cache only works with connections from OkHttpClient.open(url) - it is not a general purpose
+ * {@link java.net.ResponseCache}.
+ *
+ * @author dorian cussen
+ */
+public class HttpCache
+{
+    public static final String DEFAULT_DIRECTORY_NAME = "http";
+
+    /**
+     * Creates the cache in a dir under context.getCacheDir() and sets it on the client
+     */
+    public static HttpResponseCache install(@NotNull Context context, @NotNull OkHttpClient client, long maxSizeBytes) throws IOException
+    {
+        return install(client, new File(context.getCacheDir(), DEFAULT_DIRECTORY_NAME), maxSizeBytes);
+    }
+
+    /**
+     * Creates the cache and sets it on the client. Does disk IO so call off the UI thread
+     *
+     * @param directory should be used exclusively by this cache
+     * @param maxSizeBytes LRU entries are evicted once the cache grows past this
+     */
+    public static HttpResponseCache install(@NotNull OkHttpClient client, @NotNull File directory, long maxSizeBytes) throws IOException
+    {
+        HttpResponseCache cache = new HttpResponseCache(directory, maxSizeBytes);
+        client.setOkResponseCache(cache);
+        return cache;
+    }
+
+    /**
+     * @return the fraction of requests served from the cache (including those revalidated with a 304), 0 if none made
+     */
+    public static float getHitRatio(@NotNull HttpResponseCache cache)
+    {
+        int requests = cache.getRequestCount();
+        return requests == 0 ? 0 : (float) cache.getHitCount() / requests;
+    }
+
+    public static void logStats(@NotNull HttpResponseCache cache)
+    {
+        XLog.d("requests=" + cache.getRequestCount() +
+                " hits=" + cache.getHitCount() +
+                " network=" + cache.getNetworkCount() +
+                " hitRatio=" + getHitRatio(cache) +
+                " size=" + cache.getSize() + "/" + cache.getMaxSize());
+    }
+}
@@ -0,0 +1,337 @@
+package com.doridori.lib.io.http;
+
+import com.doridori.lib.io.http.HttpMethodsHelper.DefaultConnectionConfig;
+import com.doridori.lib.io.http.HttpMethodsHelper.HttpResponse;
+import com.doridori.lib.io.http.HttpMethodsHelper.HttpStatusCodeException;
+import com.doridori.lib.io.http.HttpMethodsHelper.ResponseHandler;
+
+import com.doridori.lib.util.XLog;
+import com.squareup.okhttp.OkHttpClient;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Reusable client around {@link HttpMethodsHelper}. Create one per app (or per backend) and share it rather than
+ * configuring a fresh HttpUrlConnection for every call.
+ *
+ * Every call goes through the same {@link DefaultConnectionConfig}. Response bodies are always drained before the
+ * stream is closed, and connections are only disconnected on failure, so the platform can reuse the socket (and TLS
+ * session) for the next call to the same host. The platform owns that pool - to size it set the "http.maxConnections"
+ * and "http.keepAliveDuration" system properties before the first connection, or pass an OkHttpClient with its own
+ * ConnectionPool. {@link #getPool()} only estimates how often sockets are reused, it does not bound anything.
+ *
+ * If the config has a {@link RetryPolicy} failed calls are retried on a fresh connection according to it. Calls with
+ * your own {@link ResponseHandler} are only retried if they fail before the handler is called, as it may already
+ * have consumed part of the body.
+ *
+ * Thread safe as long as the config is not changed while calls are in flight.
+ *
+ * @author dorian cussen
+ */
+public class HttpClient
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    private final DefaultConnectionConfig mConnectionConfig;
+    private final KeepAlivePool mPool;
+    private final OkHttpClient mOkHttpClient;
+    private final RequestCoalescer mCoalescer = new RequestCoalescer();
+    private volatile boolean mCoalesceGets = false;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    public HttpClient()
+    {
+        this(new DefaultConnectionConfig());
+    }
+
+    /**
+     * @param connectionConfig applied to every connection this client opens
+     */
+    public HttpClient(@NotNull DefaultConnectionConfig connectionConfig)
+    {
+        this(connectionConfig, null);
+    }
+
+    /**
+     * @param okHttpClient if not null connections are opened with this, which is needed to use a {@link HttpCache}
+     */
+    public HttpClient(@NotNull DefaultConnectionConfig connectionConfig, @Nullable OkHttpClient okHttpClient)
+    {
+        mConnectionConfig = connectionConfig;
+        mOkHttpClient = okHttpClient;
+        mPool = new KeepAlivePool();
+    }
+
+    //============================================================================================================
+    // CALLS
+    //============================================================================================================
+
+    @NotNull
+    public HttpResponse get(@NotNull URL url) throws IOException
+    {
+        return get(url, (Map<String, String>) null);
+    }
+
+    /**
+     * If {@link #setCoalesceGets(boolean)} is on, concurrent calls with the same url and headers share one request and
+     * get the same {@link HttpResponse} back - so do not modify its rawContents.
+     *
+     * @param headers extra request headers, can be null
+     */
+    @NotNull
+    public HttpResponse get(@NotNull final URL url, @Nullable final Map<String, String> headers) throws IOException
+    {
+        final Call<HttpResponse> call = new Call<HttpResponse>("GET", true)
+        {
+            @Override
+            HttpResponse call(HttpURLConnection connection) throws IOException
+            {
+                if (null != headers)
+                {
+                    for (Map.Entry<String, String> header : headers.entrySet())
+                        connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+
+                return HttpMethodsHelper.get(connection, mConnectionConfig, HttpMethodsHelper.BYTE_ARRAY_RESPONSE_HANDLER);
+            }
+        };
+
+        if (!mCoalesceGets)
+            return execute(url, call);
+
+        return mCoalescer.execute(RequestCoalescer.key("GET", url, headers), new Callable<HttpResponse>()
+        {
+            @Override
+            public HttpResponse call() throws Exception
+            {
+                return execute(url, call);
+            }
+        });
+    }
+
+    public <T> T get(@NotNull URL url, @NotNull final ResponseHandler<T> responseHandler) throws IOException
+    {
+        return execute(url, new Call<T>("GET", true)
+        {
+            @Override
+            T call(HttpURLConnection connection) throws IOException
+            {
+                return HttpMethodsHelper.get(connection, mConnectionConfig, track(responseHandler));
+            }
+        });
+    }
+
+    @NotNull
+    public HttpResponse post(@NotNull URL url, @NotNull RequestBody body) throws IOException
+    {
+        return post(url, body, HttpMethodsHelper.BYTE_ARRAY_RESPONSE_HANDLER);
+    }
+
+    public <T> T post(@NotNull URL url, @NotNull final RequestBody body, @NotNull final ResponseHandler<T> responseHandler) throws IOException
+    {
+        return execute(url, new Call<T>("POST", body.isRepeatable())
+        {
+            @Override
+            T call(HttpURLConnection connection) throws IOException
+            {
+                return HttpMethodsHelper.post(connection, body, mConnectionConfig, track(responseHandler));
+            }
+        });
+    }
+
+    @NotNull
+    public HttpResponse put(@NotNull URL url, @NotNull RequestBody body) throws IOException
+    {
+        return put(url, body, HttpMethodsHelper.BYTE_ARRAY_RESPONSE_HANDLER);
+    }
+
+    public <T> T put(@NotNull URL url, @NotNull final RequestBody body, @NotNull final ResponseHandler<T> responseHandler) throws IOException
+    {
+        return execute(url, new Call<T>("PUT", body.isRepeatable())
+        {
+            @Override
+            T call(HttpURLConnection connection) throws IOException
+            {
+                return HttpMethodsHelper.put(connection, body, mConnectionConfig, track(responseHandler));
+            }
+        });
+    }
+
+    //============================================================================================================
+    // GETTERS
+    //============================================================================================================
+
+    public DefaultConnectionConfig getConnectionConfig()
+    {
+        return mConnectionConfig;
+    }
+
+    /**
+     * @return estimated connection reuse, see {@link KeepAlivePool}
+     */
+    public KeepAlivePool getPool()
+    {
+        return mPool;
+    }
+
+    /**
+     * @param coalesceGets if true identical concurrent {@link #get(java.net.URL, java.util.Map)} calls are de-duplicated.
+     *                     Streaming gets are never coalesced as their body can only be read once
+     */
+    public void setCoalesceGets(boolean coalesceGets)
+    {
+        mCoalesceGets = coalesceGets;
+    }
+
+    public RequestCoalescer getCoalescer()
+    {
+        return mCoalescer;
+    }
+
+    //============================================================================================================
+    // INTERNAL
+    //============================================================================================================
+
+    /**
+     * Override to supply connections from somewhere else
+     */
+    protected HttpURLConnection openConnection(@NotNull URL url) throws IOException
+    {
+        HttpURLConnection connection = null == mOkHttpClient ? (HttpURLConnection) url.openConnection() : mOkHttpClient.open(url);
+        connection.setRequestProperty("Connection", "keep-alive");
+        return connection;
+    }
+
+    /**
+     * Runs the call, retrying according to the configs {@link RetryPolicy} if there is one
+     */
+    private <T> T execute(@NotNull URL url, @NotNull Call<T> call) throws IOException
+    {
+        RetryPolicy retryPolicy = mConnectionConfig.getRetryPolicy();
+        if (null == retryPolicy)
+            return executeOnce(url, call);
+
+        int attempt = 0;
+        while (true)
+        {
+            retryPolicy.beforeAttempt(url);
+
+            try
+            {
+                T result = executeOnce(url, call);
+                retryPolicy.onSuccess(url);
+                return result;
+            }
+            catch (RuntimeException e)
+            {
+                retryPolicy.onAbandoned(url);
+                throw e;
+            }
+            catch (IOException e)
+            {
+                retryPolicy.onFailure(url, e);
+
+                if (!call.mRepeatable || call.mHandlerStarted || !retryPolicy.shouldRetry(call.mMethod, attempt, e))
+                    throw e;
+
+                long delayMs = retryPolicy.getDelayMs(attempt, e);
+                XLog.w("retrying " + call.mMethod + "/" + url + " in " + delayMs + "ms after " + e.getClass().getSimpleName());
+
+                try
+                {
+                    Thread.sleep(delayMs);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting to retry");
+                }
+
+                attempt++;
+            }
+        }
+    }
+
+    private <T> T executeOnce(@NotNull URL url, @NotNull Call<T> call) throws IOException
+    {
+        mPool.acquire(url);
+
+        HttpURLConnection connection = openConnection(url);
+        boolean reusable = false;
+
+        try
+        {
+            T result = call.call(connection);
+            reusable = isKeepAlive(connection);
+            return result;
+        }
+        catch (HttpStatusCodeException e)
+        {
+            //the error body has been drained so the connection is still good
+            reusable = isKeepAlive(connection);
+            throw e;
+        }
+        finally
+        {
+            if (!reusable)
+                connection.disconnect();
+
+            mPool.release(url, reusable);
+        }
+    }
+
+    private static boolean isKeepAlive(@NotNull HttpURLConnection connection)
+    {
+        return !"close".equalsIgnoreCase(connection.getHeaderField("Connection"));
+    }
+
+    private static abstract class Call<T>
+    {
+        final String mMethod;
+        final boolean mRepeatable;
+        /** set once a callers handler has been given the body, after which a retry could repeat its side effects */
+        boolean mHandlerStarted = false;
+
+        Call(String method, boolean repeatable)
+        {
+            mMethod = method;
+            mRepeatable = repeatable;
+        }
+
+        abstract T call(HttpURLConnection connection) throws IOException;
+
+        /**
+         * @return the handler, wrapped to set {@link #mHandlerStarted} when called. The byte array handler is left as is
+         * as it just buffers the body so is safe to run again
+         */
+        ResponseHandler<T> track(@NotNull final ResponseHandler<T> handler)
+        {
+            if (handler == (Object) HttpMethodsHelper.BYTE_ARRAY_RESPONSE_HANDLER)
+                return handler;
+
+            return new ResponseHandler<T>()
+            {
+                @Override
+                public T handleResponse(int responseCode, @NotNull InputStream body, @NotNull HttpURLConnection connection) throws IOException
+                {
+                    mHandlerStarted = true;
+                    return handler.handleResponse(responseCode, body, connection);
+                }
+            };
+        }
+    }
+}
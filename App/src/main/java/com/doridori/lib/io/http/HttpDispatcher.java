@@ -0,0 +1,403 @@
+package com.doridori.lib.io.http;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.doridori.lib.io.http.HttpMethodsHelper.HttpResponse;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link HttpClient} calls off the calling thread, instead of each screen spinning up its own AsyncTasks.
+ *
+ * At most maxRequests calls are in flight at once, and at most maxRequestsPerHost to any one host. Everything else waits
+ * in a queue ordered by priority (higher first, then FIFO). A call to a host that is at its limit does not block calls
+ * to other hosts queued behind it. Worker threads run at background priority so a burst of requests on screen entry does
+ * not compete with the UI thread.
+ *
+ * Results are returned as a {@link Future} and optionally passed to a {@link Callback} on the supplied callback
+ * {@link Executor} (see {@link #looperExecutor(android.os.Looper)} to get callbacks on the main thread).
+ *
+ * @author dorian cussen
+ */
+public class HttpDispatcher
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    public static final int PRIORITY_LOW = -10;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 10;
+
+    private final HttpClient mClient;
+    private final int mMaxRequests;
+    private final int mMaxRequestsPerHost;
+    private final Executor mCallbackExecutor;
+    private final ExecutorService mExecutorService;
+    private volatile HttpMetrics mMetrics;
+
+    /**
+     * All guarded by this. Ready calls are kept in priority order
+     */
+    private final TreeSet<AsyncCall<?>> mReadyCalls = new TreeSet<AsyncCall<?>>();
+    private final List<AsyncCall<?>> mRunningCalls = new ArrayList<AsyncCall<?>>();
+    private final Map<String, Integer> mRunningPerHost = new HashMap<String, Integer>();
+    private int mRunningCount = 0;
+    private long mNextSequence = 0;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * @param client used to make every call
+     * @param maxRequests max calls in flight at once
+     * @param maxRequestsPerHost max calls in flight to a single host at once
+     * @param callbackExecutor where {@link Callback}s are run
+     */
+    public HttpDispatcher(@NotNull HttpClient client, int maxRequests, int maxRequestsPerHost, @NotNull Executor callbackExecutor)
+    {
+        if (maxRequests < 1)
+            throw new IllegalArgumentException("maxRequests must be >= 1");
+        if (maxRequestsPerHost < 1)
+            throw new IllegalArgumentException("maxRequestsPerHost must be >= 1");
+
+        mClient = client;
+        mMaxRequests = maxRequests;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+        mCallbackExecutor = callbackExecutor;
+        //the dispatcher bounds concurrency so the pool itself does not need to
+        mExecutorService = new ThreadPoolExecutor(
+                0,
+                Integer.MAX_VALUE,
+                60,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new BackgroundThreadFactory());
+    }
+
+    /**
+     * @return an executor that posts to the passed looper e.g. Looper.getMainLooper()
+     */
+    public static Executor looperExecutor(@NotNull Looper looper)
+    {
+        final Handler handler = new Handler(looper);
+        return new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                handler.post(command);
+            }
+        };
+    }
+
+    //============================================================================================================
+    // ENQUEUE
+    //============================================================================================================
+
+    public Future<HttpResponse> get(@NotNull final URL url, int priority, @Nullable Callback<HttpResponse> callback)
+    {
+        return enqueue(url, priority, new Task<HttpResponse>()
+        {
+            @Override
+            public HttpResponse run(@NotNull HttpClient client) throws IOException
+            {
+                return client.get(url);
+            }
+        }, callback);
+    }
+
+    public Future<HttpResponse> post(@NotNull final URL url, @NotNull final RequestBody body, int priority, @Nullable Callback<HttpResponse> callback)
+    {
+        return enqueue(url, priority, new Task<HttpResponse>()
+        {
+            @Override
+            public HttpResponse run(@NotNull HttpClient client) throws IOException
+            {
+                return client.post(url, body);
+            }
+        }, callback);
+    }
+
+    /**
+     * Queue any call. Cancelling the returned future removes the call from the queue if it has not started yet, in
+     * which case the callback is not called.
+     *
+     * @param url the host of this is used for the per host limit
+     * @param priority higher runs first. See {@link #PRIORITY_NORMAL} etc
+     * @param task the call to make
+     * @param callback can be null
+     */
+    public <T> Future<T> enqueue(@NotNull URL url, int priority, @NotNull Task<T> task, @Nullable Callback<T> callback)
+    {
+        AsyncCall<T> call;
+        synchronized (this)
+        {
+            call = new AsyncCall<T>(url, priority, mNextSequence++, task, callback);
+            mReadyCalls.add(call);
+        }
+
+        promoteCalls();
+        return call;
+    }
+
+    /**
+     * Cancels everything queued or running
+     */
+    public void cancelAll()
+    {
+        List<AsyncCall<?>> calls;
+        synchronized (this)
+        {
+            calls = new ArrayList<AsyncCall<?>>(mReadyCalls);
+        }
+
+        for (AsyncCall<?> call : calls)
+            call.cancel(true);
+
+        synchronized (this)
+        {
+            calls = new ArrayList<AsyncCall<?>>(mRunningCalls);
+        }
+
+        for (AsyncCall<?> call : calls)
+            call.cancel(true);
+    }
+
+    public synchronized int getQueuedCount()
+    {
+        return mReadyCalls.size();
+    }
+
+    public synchronized int getRunningCount()
+    {
+        return mRunningCount;
+    }
+
+    public HttpClient getClient()
+    {
+        return mClient;
+    }
+
+    /**
+     * @param metrics will be passed the time each call spent queued. Can be null
+     */
+    public void setMetrics(HttpMetrics metrics)
+    {
+        mMetrics = metrics;
+    }
+
+    //============================================================================================================
+    // INTERNAL
+    //============================================================================================================
+
+    private void promoteCalls()
+    {
+        List<AsyncCall<?>> toRun = new ArrayList<AsyncCall<?>>();
+
+        synchronized (this)
+        {
+            if (mRunningCount >= mMaxRequests || mReadyCalls.isEmpty())
+                return;
+
+            //walk in priority order, skipping calls whose host is full
+            Iterator<AsyncCall<?>> it = mReadyCalls.iterator();
+            while (it.hasNext() && mRunningCount < mMaxRequests)
+            {
+                AsyncCall<?> call = it.next();
+                Integer hostCount = mRunningPerHost.get(call.mHostKey);
+                int running = null == hostCount ? 0 : hostCount;
+
+                if (running >= mMaxRequestsPerHost)
+                    continue;
+
+                it.remove();
+                mRunningCalls.add(call);
+                mRunningPerHost.put(call.mHostKey, running + 1);
+                mRunningCount++;
+                toRun.add(call);
+            }
+        }
+
+        HttpMetrics metrics = mMetrics;
+        for (final AsyncCall<?> call : toRun)
+        {
+            if (null != metrics)
+                metrics.recordQueueTime(call.mUrl, (System.nanoTime() - call.mEnqueuedNanos) / 1000000);
+
+            mExecutorService.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        call.run();
+                    }
+                    finally
+                    {
+                        finished(call);
+                    }
+                }
+            });
+        }
+    }
+
+    private void finished(AsyncCall<?> call)
+    {
+        synchronized (this)
+        {
+            if (!mRunningCalls.remove(call))
+                return;
+
+            mRunningCount--;
+            Integer hostCount = mRunningPerHost.get(call.mHostKey);
+            if (null == hostCount || hostCount <= 1)
+                mRunningPerHost.remove(call.mHostKey);
+            else
+                mRunningPerHost.put(call.mHostKey, hostCount - 1);
+        }
+
+        promoteCalls();
+    }
+
+    private synchronized void removeQueued(AsyncCall<?> call)
+    {
+        mReadyCalls.remove(call);
+    }
+
+    private class AsyncCall<T> extends FutureTask<T> implements Comparable<AsyncCall<?>>
+    {
+        private final URL mUrl;
+        private final String mHostKey;
+        private final long mEnqueuedNanos = System.nanoTime();
+        private final int mPriority;
+        private final long mSequence;
+        private final Callback<T> mCallback;
+
+        private AsyncCall(URL url, int priority, long sequence, final Task<T> task, Callback<T> callback)
+        {
+            super(new Callable<T>()
+            {
+                @Override
+                public T call() throws Exception
+                {
+                    return task.run(mClient);
+                }
+            });
+            mUrl = url;
+            mHostKey = KeepAlivePool.hostKey(url);
+            mPriority = priority;
+            mSequence = sequence;
+            mCallback = callback;
+        }
+
+        @Override
+        protected void done()
+        {
+            if (isCancelled())
+            {
+                removeQueued(this);
+                return;
+            }
+
+            if (null == mCallback)
+                return;
+
+            mCallbackExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        mCallback.onSuccess(get());
+                    }
+                    catch (ExecutionException e)
+                    {
+                        Throwable cause = e.getCause();
+                        mCallback.onFailure(cause instanceof Exception ? (Exception) cause : e);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        mCallback.onFailure(e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(@NotNull AsyncCall<?> another)
+        {
+            if (mPriority != another.mPriority)
+                return mPriority > another.mPriority ? -1 : 1;
+
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull final Runnable r)
+        {
+            return new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "HttpDispatcher #" + mCount.incrementAndGet());
+        }
+    }
+
+    //============================================================================================================
+    // INTERFACES
+    //============================================================================================================
+
+    /**
+     * Run on a dispatcher thread
+     */
+    public interface Task<T>
+    {
+        public T run(@NotNull HttpClient client) throws IOException;
+    }
+
+    /**
+     * Run on the callback executor. Not called if the call was cancelled
+     */
+    public interface Callback<T>
+    {
+        public void onSuccess(T result);
+
+        public void onFailure(@NotNull Exception e);
+    }
+}
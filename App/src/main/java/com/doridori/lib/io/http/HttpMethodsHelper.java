@@ -6,19 +6,26 @@ import com.squareup.mimecraft.Multipart;
 import com.squareup.mimecraft.Part;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.http.HttpStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.URL;
 import java.net.URLConnection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Deprecated - use OkHttp 2.0 instead
@@ -93,12 +100,45 @@ public class HttpMethodsHelper
             @NotNull ContentTypes contentType,
             @NotNull byte[] body) throws IOException
     {
-        return doHttpWithBody(
-                connection,
-                "POST",
-                contentType.getAsString(),
-                new DefaultConnectionConfig(),
-                body);
+        return post(connection, RequestBody.create(contentType.getAsString(), body));
+    }
+
+    /**
+     * Streaming version of {@link #postRaw(java.net.HttpURLConnection, ContentTypes, byte[])}. The response body is
+     * handed to the passed {@link ResponseHandler} rather than being read into memory
+     */
+    public static <T> T postRaw(
+            @NotNull HttpURLConnection connection,
+            @NotNull ContentTypes contentType,
+            @NotNull byte[] body,
+            @NotNull DefaultConnectionConfig connectionConfig,
+            @NotNull ResponseHandler<T> responseHandler) throws IOException
+    {
+        return post(connection, RequestBody.create(contentType.getAsString(), body), connectionConfig, responseHandler);
+    }
+
+    /**
+     * Streams the passed {@link RequestBody} straight to the connection
+     *
+     * @param connection
+     * @param body
+     * @return
+     * @throws java.io.IOException
+     */
+    public static HttpResponse post(
+            @NotNull HttpURLConnection connection,
+            @NotNull RequestBody body) throws IOException
+    {
+        return post(connection, body, new DefaultConnectionConfig(), BYTE_ARRAY_RESPONSE_HANDLER);
+    }
+
+    public static <T> T post(
+            @NotNull HttpURLConnection connection,
+            @NotNull RequestBody body,
+            @NotNull DefaultConnectionConfig connectionConfig,
+            @NotNull ResponseHandler<T> responseHandler) throws IOException
+    {
+        return doHttpWithBody(connection, "POST", connectionConfig, body, responseHandler);
     }
 
     /**
@@ -112,7 +152,7 @@ public class HttpMethodsHelper
             @NotNull HttpURLConnection connection,
             @NotNull FormEncoding formEncoding) throws IOException
     {
-        return postForm(connection, ContentTypes.FORM_URLENCODED, formEncoding);
+        return postForm(connection, formEncoding);
     }
 
 
@@ -145,11 +185,67 @@ public class HttpMethodsHelper
             it.remove(); // avoids a ConcurrentModificationException
         }
 
-        return postForm(connection, ContentTypes.MULTIPART, builder.build());
+        return postForm(connection, builder.build());
     }
 
     /**
-     * Use this for 'multipart/form-data' where the form parts are of mixed type'
+     * Use this for 'multipart/form-data' where the form parts are of mixed type. See {@link #formFieldPart(String, String)},
+     * {@link #formFilePart(String, String, java.io.File)} and {@link #formStreamPart(String, String, String, java.io.InputStream)}.
+     *
+     * The body is streamed to the connection in chunked mode so file and stream parts are never held in memory
+     *
+     * @param connection
+     * @param formParts
+     * @return
+     * @throws java.io.IOException
+     */
+    public static HttpResponse postMultipartForm(
+            @NotNull HttpURLConnection connection,
+            @NotNull List<Part> formParts) throws IOException
+    {
+        Multipart.Builder builder = new Multipart.Builder();
+        builder.type(Multipart.Type.FORM);
+
+        for (Part part : formParts)
+            builder.addPart(part);
+
+        return postForm(connection, builder.build());
+    }
+
+    public static Part formFieldPart(@NotNull String name, @NotNull String value)
+    {
+        return new Part.Builder()
+                .contentDisposition("form-data; name=\"" + name + "\"")
+                .body(value)
+                .build();
+    }
+
+    /**
+     * @param contentType e.g. "image/jpeg"
+     */
+    public static Part formFilePart(@NotNull String name, @NotNull String contentType, @NotNull File file)
+    {
+        return new Part.Builder()
+                .contentDisposition("form-data; name=\"" + name + "\"; filename=\"" + file.getName() + "\"")
+                .contentType(contentType)
+                .body(file)
+                .build();
+    }
+
+    /**
+     * @param in will be read when the request is written
+     */
+    public static Part formStreamPart(@NotNull String name, @NotNull String fileName, @NotNull String contentType, @NotNull InputStream in)
+    {
+        return new Part.Builder()
+                .contentDisposition("form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"")
+                .contentType(contentType)
+                .body(in)
+                .build();
+    }
+
+    /**
+     * Streams the part to the connection. The Content-Type (with the boundary for multipart) comes from the part itself
      *
      * @param connection
      * @param part should be either {@link com.squareup.mimecraft.Multipart} || {@link com.squareup.mimecraft.FormEncoding}
@@ -158,14 +254,9 @@ public class HttpMethodsHelper
      */
     private static HttpResponse postForm(
             @NotNull HttpURLConnection connection,
-            @NotNull ContentTypes formContentTypes,
             @NotNull final Part part) throws IOException
     {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        part.writeBodyTo(byteArrayOutputStream);
-        byte[] bytes = byteArrayOutputStream.toByteArray();
-
-        return doHttpWithBody(connection, "POST", formContentTypes.getAsString(), new DefaultConnectionConfig(), bytes);
+        return post(connection, RequestBody.create(part));
     }
 
     //============================================================================================================
@@ -177,13 +268,40 @@ public class HttpMethodsHelper
             @NotNull ContentTypes contentType,
             @NotNull final String rawBody) throws IOException
     {
-        return doHttpWithBody(
-                connection,
-                "PUT",
-                contentType.getAsString(),
-                new DefaultConnectionConfig(),
-                rawBody.getBytes("UTF-8"));
+        return put(connection, RequestBody.create(contentType.getAsString(), rawBody.getBytes("UTF-8")));
+    }
 
+    /**
+     * Streaming version of {@link #putRawData(java.net.HttpURLConnection, ContentTypes, String)}. The response body is
+     * handed to the passed {@link ResponseHandler} rather than being read into memory
+     */
+    public static <T> T putRawData(
+            @NotNull HttpURLConnection connection,
+            @NotNull ContentTypes contentType,
+            @NotNull final byte[] rawBody,
+            @NotNull DefaultConnectionConfig connectionConfig,
+            @NotNull ResponseHandler<T> responseHandler) throws IOException
+    {
+        return put(connection, RequestBody.create(contentType.getAsString(), rawBody), connectionConfig, responseHandler);
+    }
+
+    /**
+     * Streams the passed {@link RequestBody} straight to the connection
+     */
+    public static HttpResponse put(
+            @NotNull HttpURLConnection connection,
+            @NotNull RequestBody body) throws IOException
+    {
+        return put(connection, body, new DefaultConnectionConfig(), BYTE_ARRAY_RESPONSE_HANDLER);
+    }
+
+    public static <T> T put(
+            @NotNull HttpURLConnection connection,
+            @NotNull RequestBody body,
+            @NotNull DefaultConnectionConfig connectionConfig,
+            @NotNull ResponseHandler<T> responseHandler) throws IOException
+    {
+        return doHttpWithBody(connection, "PUT", connectionConfig, body, responseHandler);
     }
 
     //============================================================================================================
@@ -213,6 +331,24 @@ public class HttpMethodsHelper
     public static HttpResponse get(
             @NotNull HttpURLConnection connection,
             @NotNull DefaultConnectionConfig connectionConfig) throws IOException
+    {
+        return get(connection, connectionConfig, BYTE_ARRAY_RESPONSE_HANDLER);
+    }
+
+    /**
+     * Streaming GET. The response body is passed to the {@link ResponseHandler} as it comes off the wire so large bodies
+     * can be parsed incrementally instead of being held on the heap.
+     *
+     * @param connection
+     * @param connectionConfig
+     * @param responseHandler
+     * @return whatever the responseHandler returns
+     * @throws java.io.IOException
+     */
+    public static <T> T get(
+            @NotNull HttpURLConnection connection,
+            @NotNull DefaultConnectionConfig connectionConfig,
+            @NotNull ResponseHandler<T> responseHandler) throws IOException
     {
         //auto uses GET
         connection.setDoOutput(false); //true will switch the request to a POST - dont need this for a GET
@@ -224,18 +360,32 @@ public class HttpMethodsHelper
 
         connectionConfig.config(connection);
 
-        InputStream in = null;
-
+        TransferStats stats = new TransferStats(connection.getURL());
         try
         {
-            return processResponse(connection);
+            connection.connect();
+            stats.connectMs = stats.elapsedMs();
+
+            return processResponse(connection, connectionConfig, responseHandler, stats);
+        }
+        catch (HttpStatusCodeException e)
+        {
+            //a response was read, the stats already have its code
+            throw e;
+        }
+        catch (IOException e)
+        {
+            stats.failure = e;
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            stats.failure = e;
+            throw e;
         }
         finally
         {
-            if (in != null)
-            {
-                in.close();
-            }
+            reportTransfer(connectionConfig, stats);
         }
     }
 
@@ -244,46 +394,85 @@ public class HttpMethodsHelper
     //============================================================================================================
 
     /**
-     * Generic http call with body.
+     * Generic http call with body. The body is streamed to the connection in fixed length mode if its length is known
+     * or chunked mode if not, so HttpUrlConnection does not buffer it. If {@link DefaultConnectionConfig#isGzipRequests()}
+     * the body is gzipped on the way out (and so is always chunked).
      *
      * @param connection
      * @param method
-     * @param contentType
+     * @param connectionConfig
      * @param outBody
+     * @param responseHandler
      * @return
      * @throws java.io.IOException
      */
-    @NotNull
-    private static HttpResponse doHttpWithBody(
+    private static <T> T doHttpWithBody(
             @NotNull HttpURLConnection connection,
             @NotNull String method,
-            @NotNull String contentType,
             @NotNull DefaultConnectionConfig connectionConfig,
-            @NotNull byte[] outBody) throws IOException
+            @NotNull RequestBody outBody,
+            @NotNull ResponseHandler<T> responseHandler) throws IOException
     {
         XLog.d(method+"/"+connection.getURL().toString());
 
         connectionConfig.config(connection);
 
         OutputStream out = null;
+        TransferStats stats = new TransferStats(connection.getURL());
 
         try
         {
             // Write the request.
             connection.setRequestMethod(method);
-            connection.setRequestProperty("Content-Type", contentType);
+            connection.setRequestProperty("Content-Type", outBody.contentType());
+            connection.setDoOutput(true);
+
+            boolean gzip = connectionConfig.isGzipRequests();
+            long contentLength = outBody.contentLength();
+            if (gzip)
+                connection.setRequestProperty("Content-Encoding", "gzip");
 
-            out = connection.getOutputStream();
-            out.write(outBody);
+            if (!gzip && contentLength >= 0 && contentLength <= Integer.MAX_VALUE)
+                connection.setFixedLengthStreamingMode((int) contentLength);
+            else
+                connection.setChunkedStreamingMode(connectionConfig.getBufferSize());
+
+            connection.connect();
+            stats.connectMs = stats.elapsedMs();
+
+            CountingOutputStream wireOut = new CountingOutputStream(connection.getOutputStream());
+            CountingOutputStream bodyOut = new CountingOutputStream(gzip ? new GZIPOutputStream(wireOut, connectionConfig.getBufferSize()) : wireOut);
+            out = bodyOut;
+            outBody.writeTo(out);
 
             out.flush();
             out.close();
 
-            return processResponse(connection);
+            stats.requestWireBytes = wireOut.getByteCount();
+            stats.requestBodyBytes = bodyOut.getByteCount();
+            stats.requestWriteMs = stats.elapsedMs() - stats.connectMs;
+
+            return processResponse(connection, connectionConfig, responseHandler, stats);
+        }
+        catch (HttpStatusCodeException e)
+        {
+            //a response was read, the stats already have its code
+            throw e;
+        }
+        catch (IOException e)
+        {
+            stats.failure = e;
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            stats.failure = e;
+            throw e;
         }
         finally
         {
             IOUtils.closeQuietly(out);
+            reportTransfer(connectionConfig, stats);
         }
     }
 
@@ -292,43 +481,255 @@ public class HttpMethodsHelper
     //============================================================================================================
 
     /**
-     * Will throw an {@link HttpMethodsHelper.HttpStatusCodeException} if above 400
+     * Will throw an {@link HttpMethodsHelper.HttpStatusCodeException} if above 400. The error body passed to the exception
+     * is capped at {@link DefaultConnectionConfig#getMaxErrorBodyBytes()}.
+     *
+     * Otherwise the response body stream is passed to the responseHandler, wrapped in a buffer of
+     * {@link DefaultConnectionConfig#getBufferSize()}. The stream is closed once the handler returns so the handler must
+     * not keep hold of it. Any unread body (up to {@link DefaultConnectionConfig#getMaxDrainBytes()}) is drained before
+     * closing so the underlying socket can go back into the platforms keep-alive pool.
      *
-     * This will convert the response to a string and then pass back. You may want to stream data to a streaming parser - an
-     * InputStreamHandler will need to be passed
+     * Bodies with a Content-Encoding of gzip or deflate are decoded before being passed on (see
+     * {@link DecodingInputStream}), and the wire / decoded sizes and timings are filled in on the stats.
      *
      * @param connection
-     * @return
+     * @return whatever the responseHandler returns
      * @throws java.io.IOException
      */
-    private static HttpResponse processResponse(
-            HttpURLConnection connection) throws IOException
+    private static <T> T processResponse(
+            HttpURLConnection connection,
+            DefaultConnectionConfig connectionConfig,
+            ResponseHandler<T> responseHandler,
+            TransferStats stats) throws IOException
     {
         InputStream in = null;
+        CountingInputStream wireIn = null;
+        CountingInputStream bodyIn = null;
+        long requestSentMs = stats.elapsedMs();
+        long firstByteMs = -1;
 
         try
         {
             int httpResponseCode = connection.getResponseCode();
+            firstByteMs = stats.elapsedMs();
+            stats.timeToFirstByteMs = firstByteMs - requestSentMs;
+            stats.responseCode = httpResponseCode;
 
             XLog.d(httpResponseCode + "code");
 
+            //a 304 only reaches here if the caller sent their own conditional headers - when a cache is installed it
+            //handles the revalidation itself and we see the cached 200. Either way the body passed on is empty
+            if (httpResponseCode == HttpURLConnection.HTTP_NOT_MODIFIED)
+                XLog.d("not modified");
+
             if (httpResponseCode >= HttpStatus.SC_BAD_REQUEST)
-                in = connection.getErrorStream();
-            else
-                in = connection.getInputStream();
+            {
+                InputStream errorStream = connection.getErrorStream();
+                if (null != errorStream)
+                {
+                    wireIn = new CountingInputStream(errorStream);
+                    bodyIn = new CountingInputStream(DecodingInputStream.wrap(wireIn, connection.getContentEncoding()));
+                    in = bodyIn;
+                }
+
+                //a broken error body should not hide the status code
+                byte[] errorBytes;
+                try
+                {
+                    errorBytes = readCapped(in, connectionConfig.getMaxErrorBodyBytes());
+                }
+                catch (IOException e)
+                {
+                    XLog.w("could not read " + httpResponseCode + " error body: " + e);
+                    errorBytes = null;
+                }
+                throw new HttpStatusCodeException(
+                        httpResponseCode,
+                        null == errorBytes ? null : new String(errorBytes, "UTF-8"),
+                        connection.getHeaderField("Retry-After"));
+            }
 
-            byte[] inBytes = IOUtils.toByteArray(in);
+            //no body to decode for these, even if a Content-Encoding is sent
+            boolean noBody = httpResponseCode == HttpURLConnection.HTTP_NO_CONTENT || httpResponseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
 
-            if (httpResponseCode >= HttpStatus.SC_BAD_REQUEST)
-                throw new HttpStatusCodeException(httpResponseCode, new String(inBytes));
-            else
-                return new HttpResponse(connection.getResponseCode(), inBytes, connection);
+            wireIn = new CountingInputStream(connection.getInputStream());
+            bodyIn = new CountingInputStream(noBody ? wireIn : DecodingInputStream.wrap(wireIn, connection.getContentEncoding()));
+            in = new BufferedInputStream(bodyIn, connectionConfig.getBufferSize());
+            return responseHandler.handleResponse(httpResponseCode, in, connection);
         }
         finally
         {
+            drainQuietly(in, connectionConfig.getMaxDrainBytes());
             IOUtils.closeQuietly(in);
+            //normally closed through in, but not if we failed before in was set up
+            IOUtils.closeQuietly(wireIn);
+
+            stats.bodyReadMs = firstByteMs < 0 ? 0 : stats.elapsedMs() - firstByteMs;
+            stats.responseWireBytes = null == wireIn ? 0 : wireIn.getByteCount();
+            stats.responseBodyBytes = null == bodyIn ? 0 : bodyIn.getByteCount();
+        }
+    }
+
+    /**
+     * Passes the stats to any {@link TransferListener}, whether the call worked or not
+     */
+    private static void reportTransfer(DefaultConnectionConfig connectionConfig, TransferStats stats)
+    {
+        TransferListener listener = connectionConfig.getTransferListener();
+        if (null == listener)
+            return;
+
+        stats.totalMs = stats.elapsedMs();
+        listener.onTransferComplete(stats);
+    }
+
+    /**
+     * HttpUrlConnection will only reuse a socket if the body has been read to the end before the stream is closed. If
+     * there is more left than maxBytes we give up and let the socket be closed instead.
+     */
+    private static void drainQuietly(@Nullable InputStream in, int maxBytes)
+    {
+        if (null == in)
+            return;
+
+        try
+        {
+            byte[] buffer = new byte[Math.max(1, Math.min(maxBytes, 4096))];
+            int remaining = maxBytes;
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, Math.min(buffer.length, remaining))) != -1)
+                remaining -= read;
+        }
+        catch (IOException e)
+        {
+            //nothing to do - socket just wont be reused
+        }
+    }
+
+    /**
+     * @param in can be null (HttpUrlConnection will return a null error stream if there is no body)
+     * @param maxBytes anything over this is not read
+     * @return null if in is null
+     */
+    @Nullable
+    private static byte[] readCapped(@Nullable InputStream in, int maxBytes) throws IOException
+    {
+        if (null == in)
+            return null;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxBytes, 4096));
+        byte[] buffer = new byte[Math.min(maxBytes, 4096)];
+        int remaining = maxBytes;
+        int read;
+        while (remaining > 0 && (read = in.read(buffer, 0, Math.min(buffer.length, remaining))) != -1)
+        {
+            out.write(buffer, 0, read);
+            remaining -= read;
         }
 
+        return out.toByteArray();
+    }
+
+    //============================================================================================================
+    // RESPONSE HANDLERS
+    //============================================================================================================
+
+    /**
+     * Receives the response body for any call under 400. Use this to stream the body into a streaming parser (e.g.
+     * JsonReader) so that peak memory is fixed at the buffer size rather than the body size.
+     */
+    public interface ResponseHandler<T>
+    {
+        /**
+         * @param responseCode
+         * @param body buffered body stream. Will be closed after this method returns so do not hold a reference to it
+         * @param connection can be used to read headers etc
+         * @return will be returned from the HttpMethodsHelper call
+         * @throws java.io.IOException
+         */
+        public T handleResponse(int responseCode, @NotNull InputStream body, @NotNull HttpURLConnection connection) throws IOException;
+    }
+
+    /**
+     * Reads the whole body into memory - this is what the non-streaming methods use
+     */
+    static final ResponseHandler<HttpResponse> BYTE_ARRAY_RESPONSE_HANDLER = new ResponseHandler<HttpResponse>()
+    {
+        @Override
+        public HttpResponse handleResponse(int responseCode, @NotNull InputStream body, @NotNull HttpURLConnection connection) throws IOException
+        {
+            return new HttpResponse(responseCode, IOUtils.toByteArray(body), connection);
+        }
+    };
+
+    //============================================================================================================
+    // TRANSFER STATS
+    //============================================================================================================
+
+    /**
+     * Set on {@link DefaultConnectionConfig#setTransferListener(TransferListener)}. Called on the calling thread once a
+     * call is over - after a response (including an error response) has been read, or after the call failed without
+     * one, in which case {@link TransferStats#failure} is set. See {@link HttpMetrics} for an implementation that keeps
+     * histograms.
+     */
+    public interface TransferListener
+    {
+        public void onTransferComplete(@NotNull TransferStats stats);
+    }
+
+    /**
+     * Byte counts and timings for a single call. Wire counts are what went over the network, body counts are before
+     * compression (request) or after decompression (response).
+     *
+     * connectMs covers dns, tcp and tls (HttpUrlConnection does not let us split these) and will be close to 0 for a
+     * pooled connection. timeToFirstByteMs runs from the request being sent to the response headers arriving, bodyReadMs
+     * from then until the body has been handled and drained. Phases a failed call never reached are left at 0.
+     */
+    public static class TransferStats
+    {
+        public final URL url;
+        /**
+         * 0 if no response was read
+         */
+        public int responseCode;
+        /**
+         * Why the call failed, null if it did not. Connect, timeout, write and read failures and response handler
+         * exceptions end up here. Error status codes do not, as a response was read - see responseCode
+         */
+        @Nullable
+        public Exception failure;
+
+        public long requestWireBytes;
+        public long requestBodyBytes;
+        public long responseWireBytes;
+        public long responseBodyBytes;
+
+        public long connectMs;
+        public long requestWriteMs;
+        public long timeToFirstByteMs;
+        public long bodyReadMs;
+        public long totalMs;
+
+        private final long mStartNanos = System.nanoTime();
+
+        public TransferStats(@NotNull URL url)
+        {
+            this.url = url;
+        }
+
+        long elapsedMs()
+        {
+            return (System.nanoTime() - mStartNanos) / 1000000;
+        }
+
+        @Override
+        public String toString()
+        {
+            return url + " " + responseCode +
+                    " out " + requestWireBytes + "/" + requestBodyBytes + " in " + responseWireBytes + "/" + responseBodyBytes + " (wire/body)" +
+                    " connect " + connectMs + "ms write " + requestWriteMs + "ms ttfb " + timeToFirstByteMs + "ms body " + bodyReadMs + "ms total " + totalMs + "ms" +
+                    (null == failure ? "" : " failed " + failure);
+        }
     }
 
     //============================================================================================================
@@ -372,11 +773,21 @@ public class HttpMethodsHelper
     {
         private final int statusCode;
         private final String body;
+        private final String retryAfter;
 
         public HttpStatusCodeException(int statusCode, @Nullable String body)
+        {
+            this(statusCode, body, null);
+        }
+
+        /**
+         * @param retryAfter the raw Retry-After header, can be null
+         */
+        public HttpStatusCodeException(int statusCode, @Nullable String body, @Nullable String retryAfter)
         {
             this.statusCode = statusCode;
             this.body = body;
+            this.retryAfter = retryAfter;
         }
 
         public int getStatusCode()
@@ -389,6 +800,15 @@ public class HttpMethodsHelper
             return body;
         }
 
+        /**
+         * @return the raw Retry-After header (seconds or a http date) or null if not sent
+         */
+        @Nullable
+        public String getRetryAfter()
+        {
+            return retryAfter;
+        }
+
         @Override
         public String getMessage()
         {
@@ -405,13 +825,29 @@ public class HttpMethodsHelper
         //DEFAULTS
         private boolean mFollowRedirects = false;
         private boolean mEnableCache = false; ////disable cache as causing FileNotFoundException for most calls - https://github.com/square/okhttp/blob/master/okhttp/src/main/java/com/squareup/okhttp/HttpResponseCache.java
+        private int mMaxStaleSeconds = 0;
+        private boolean mGzipRequests = false;
+        private boolean mAcceptCompressed = true;
+        private TransferListener mTransferListener;
+        private RetryPolicy mRetryPolicy;
+        private int mMaxErrorBodyBytes = 64 * 1024;
+        private int mBufferSize = 8 * 1024;
+        private int mMaxDrainBytes = 64 * 1024;
 
         public void config(HttpURLConnection httpURLConnection)
         {
             httpURLConnection.setInstanceFollowRedirects(mFollowRedirects);
 
+            httpURLConnection.setUseCaches(mEnableCache);
+
             if(!mEnableCache)
                 httpURLConnection.addRequestProperty("Cache-Control","no-cache");
+            else if(mMaxStaleSeconds > 0)
+                httpURLConnection.addRequestProperty("Cache-Control","max-stale=" + mMaxStaleSeconds);
+
+            //setting this ourselves stops the platform decoding transparently, so the encoded size is visible
+            if(mAcceptCompressed)
+                httpURLConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
         }
 
         public void setFollowRedirects(boolean followRedirects)
@@ -423,5 +859,131 @@ public class HttpMethodsHelper
         {
             return mEnableCache;
         }
+
+        /**
+         * Only has an effect once a cache has been installed, see {@link HttpCache}. Responses
+         * are then served / revalidated according to their Cache-Control, Expires, ETag and Last-Modified headers.
+         */
+        public void setEnableCache(boolean enableCache)
+        {
+            mEnableCache = enableCache;
+        }
+
+        /**
+         * @param maxStaleSeconds if > 0 cached responses up to this many seconds past their expiry are used without going
+         *                        to the network. Useful for data that rarely changes. Ignored if the cache is disabled
+         */
+        public void setMaxStaleSeconds(int maxStaleSeconds)
+        {
+            mMaxStaleSeconds = maxStaleSeconds;
+        }
+
+        public int getMaxStaleSeconds()
+        {
+            return mMaxStaleSeconds;
+        }
+
+        /**
+         * @param gzipRequests if true request bodies are gzipped. Only turn on if the server supports Content-Encoding: gzip
+         */
+        public void setGzipRequests(boolean gzipRequests)
+        {
+            mGzipRequests = gzipRequests;
+        }
+
+        public boolean isGzipRequests()
+        {
+            return mGzipRequests;
+        }
+
+        /**
+         * @param acceptCompressed if true (the default) gzip and deflate responses are asked for and decoded
+         */
+        public void setAcceptCompressed(boolean acceptCompressed)
+        {
+            mAcceptCompressed = acceptCompressed;
+        }
+
+        public boolean isAcceptCompressed()
+        {
+            return mAcceptCompressed;
+        }
+
+        /**
+         * @param transferListener can be null
+         */
+        public void setTransferListener(TransferListener transferListener)
+        {
+            mTransferListener = transferListener;
+        }
+
+        public TransferListener getTransferListener()
+        {
+            return mTransferListener;
+        }
+
+        /**
+         * @param retryPolicy used by {@link HttpClient} to retry failed calls. Can be null for no retries
+         */
+        public void setRetryPolicy(RetryPolicy retryPolicy)
+        {
+            mRetryPolicy = retryPolicy;
+        }
+
+        public RetryPolicy getRetryPolicy()
+        {
+            return mRetryPolicy;
+        }
+
+        /**
+         * @param maxErrorBodyBytes error bodies (>= 400) longer than this will be truncated before being passed to the
+         *                          {@link HttpStatusCodeException}
+         */
+        public void setMaxErrorBodyBytes(int maxErrorBodyBytes)
+        {
+            if (maxErrorBodyBytes < 0)
+                throw new IllegalArgumentException("maxErrorBodyBytes must be >= 0");
+
+            mMaxErrorBodyBytes = maxErrorBodyBytes;
+        }
+
+        public int getMaxErrorBodyBytes()
+        {
+            return mMaxErrorBodyBytes;
+        }
+
+        /**
+         * @param bufferSize size of the buffer the response body stream is wrapped in. Also used as the chunk length for
+         *                   request bodies of unknown length
+         */
+        public void setBufferSize(int bufferSize)
+        {
+            if (bufferSize <= 0)
+                throw new IllegalArgumentException("bufferSize must be > 0");
+
+            mBufferSize = bufferSize;
+        }
+
+        public int getBufferSize()
+        {
+            return mBufferSize;
+        }
+
+        /**
+         * @param maxDrainBytes the max amount of unread response body that will be skipped so the connection can be
+         *                      reused. If more than this is left the connection is closed instead
+         */
+        public void setMaxDrainBytes(int maxDrainBytes)
+        {
+            if (maxDrainBytes < 0)
+                throw new IllegalArgumentException("maxDrainBytes must be >= 0");
+
+            mMaxDrainBytes = maxDrainBytes;
+        }
+
+        public int getMaxDrainBytes()
+        {
+            return mMaxDrainBytes;
+        }
     }
 }
@@ -0,0 +1,394 @@
+package com.doridori.lib.io.http;
+
+import com.doridori.lib.io.http.HttpMethodsHelper.TransferListener;
+import com.doridori.lib.io.http.HttpMethodsHelper.TransferStats;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps latency histograms and byte counts per host and per endpoint. Set as the
+ * {@link HttpMethodsHelper.DefaultConnectionConfig#setTransferListener(TransferListener)} and (for queue times) on
+ * {@link HttpDispatcher#setMetrics(HttpMetrics)}.
+ *
+ * Endpoints are host + path, with path segments that look like ids (numbers, UUIDs / hex hashes and other long
+ * tokens containing digits) replaced by ":id" so /user/123 and /user/456 are grouped together. Query strings are
+ * dropped. Paths can still carry anything (names, slugs) so at most maxEndpoints endpoints are kept, later ones are
+ * all counted under {@link #OTHER_ENDPOINT}.
+ *
+ * Failed calls (see {@link TransferStats#failure}) are counted in calls and failures and their total time recorded,
+ * but they are left out of the per phase histograms as the phases they did not reach would read as 0ms.
+ *
+ * Recording is lock free so this can stay on in production builds. Use {@link #dump()} for logcat or {@link #toJson()}
+ * to export.
+ *
+ * @author dorian cussen
+ */
+public class HttpMetrics implements TransferListener
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    public static final int DEFAULT_MAX_ENDPOINTS = 200;
+    public static final String OTHER_ENDPOINT = "other";
+
+    /**
+     * Segments at least this long that contain a digit are taken to be tokens
+     */
+    private static final int TOKEN_MIN_LENGTH = 16;
+
+    private final ConcurrentMap<String, Timings> mByHost = new ConcurrentHashMap<String, Timings>();
+    private final ConcurrentMap<String, Timings> mByEndpoint = new ConcurrentHashMap<String, Timings>();
+    private final int mMaxEndpoints;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    public HttpMetrics()
+    {
+        this(DEFAULT_MAX_ENDPOINTS);
+    }
+
+    /**
+     * @param maxEndpoints endpoints kept before the rest are counted under {@link #OTHER_ENDPOINT}
+     */
+    public HttpMetrics(int maxEndpoints)
+    {
+        if (maxEndpoints < 1)
+            throw new IllegalArgumentException("maxEndpoints must be > 0");
+
+        mMaxEndpoints = maxEndpoints;
+    }
+
+    //============================================================================================================
+    // RECORDING
+    //============================================================================================================
+
+    @Override
+    public void onTransferComplete(@NotNull TransferStats stats)
+    {
+        getTimings(mByHost, KeepAlivePool.hostKey(stats.url)).record(stats);
+        getEndpointTimings(stats.url).record(stats);
+    }
+
+    /**
+     * Called by {@link HttpDispatcher} with the time a call spent waiting to run
+     */
+    public void recordQueueTime(@NotNull URL url, long queueMs)
+    {
+        getTimings(mByHost, KeepAlivePool.hostKey(url)).queue.record(queueMs);
+        getEndpointTimings(url).queue.record(queueMs);
+    }
+
+    public void reset()
+    {
+        mByHost.clear();
+        mByEndpoint.clear();
+    }
+
+    //============================================================================================================
+    // EXPORT
+    //============================================================================================================
+
+    public Map<String, Timings> getByHost()
+    {
+        return new TreeMap<String, Timings>(mByHost);
+    }
+
+    public Map<String, Timings> getByEndpoint()
+    {
+        return new TreeMap<String, Timings>(mByEndpoint);
+    }
+
+    /**
+     * @return a human readable summary, one line per histogram
+     */
+    public String dump()
+    {
+        StringBuilder builder = new StringBuilder();
+        dump(builder, "host", getByHost());
+        dump(builder, "endpoint", getByEndpoint());
+        return builder.toString();
+    }
+
+    public JSONObject toJson() throws JSONException
+    {
+        JSONObject json = new JSONObject();
+        json.put("hosts", toJson(getByHost()));
+        json.put("endpoints", toJson(getByEndpoint()));
+        return json;
+    }
+
+    //============================================================================================================
+    // HELPERS
+    //============================================================================================================
+
+    static String endpointKey(@NotNull URL url)
+    {
+        StringBuilder builder = new StringBuilder(KeepAlivePool.hostKey(url));
+        String path = url.getPath();
+        int start = 0;
+        while (start < path.length())
+        {
+            int end = path.indexOf('/', start + 1);
+            if (end == -1)
+                end = path.length();
+
+            String segment = path.substring(start, end);
+            builder.append(isIdSegment(segment) ? "/:id" : segment);
+            start = end;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param segment includes the leading slash
+     */
+    private static boolean isIdSegment(String segment)
+    {
+        int length = segment.length() - 1;
+        if (length < 1)
+            return false;
+
+        boolean allDigits = true;
+        boolean allHex = true;
+        boolean anyDigit = false;
+        for (int i = 1; i < segment.length(); i++)
+        {
+            char c = segment.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            anyDigit |= digit;
+            allDigits &= digit;
+            allHex &= digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-';
+        }
+
+        //numbers, then UUIDs and hex hashes, then anything else long with a digit in (base64 ids, tokens)
+        return allDigits || (length >= 8 && allHex && anyDigit) || (length >= TOKEN_MIN_LENGTH && anyDigit);
+    }
+
+    private Timings getEndpointTimings(URL url)
+    {
+        String key = endpointKey(url);
+        Timings timings = mByEndpoint.get(key);
+        if (null != timings)
+            return timings;
+
+        //size() is only a hint under contention, so this can overshoot by a few
+        if (mByEndpoint.size() >= mMaxEndpoints)
+            key = OTHER_ENDPOINT;
+        return getTimings(mByEndpoint, key);
+    }
+
+    private static Timings getTimings(ConcurrentMap<String, Timings> map, String key)
+    {
+        Timings timings = map.get(key);
+        if (null == timings)
+        {
+            Timings created = new Timings();
+            timings = map.putIfAbsent(key, created);
+            if (null == timings)
+                timings = created;
+        }
+        return timings;
+    }
+
+    private static void dump(StringBuilder builder, String type, Map<String, Timings> timings)
+    {
+        for (Map.Entry<String, Timings> entry : timings.entrySet())
+        {
+            Timings t = entry.getValue();
+            builder.append(type).append(' ').append(entry.getKey())
+                    .append(" calls=").append(t.calls.get())
+                    .append(" failures=").append(t.failures.get())
+                    .append(" bytesOut=").append(t.bytesOut.get())
+                    .append(" bytesIn=").append(t.bytesIn.get())
+                    .append('\n');
+
+            for (Map.Entry<String, Histogram> histogram : t.histograms().entrySet())
+                builder.append("    ").append(histogram.getKey()).append(' ').append(histogram.getValue()).append('\n');
+        }
+    }
+
+    private static JSONObject toJson(Map<String, Timings> timings) throws JSONException
+    {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Timings> entry : timings.entrySet())
+        {
+            Timings t = entry.getValue();
+            JSONObject jsonTimings = new JSONObject();
+            jsonTimings.put("calls", t.calls.get());
+            jsonTimings.put("failures", t.failures.get());
+            jsonTimings.put("bytesOut", t.bytesOut.get());
+            jsonTimings.put("bytesIn", t.bytesIn.get());
+
+            for (Map.Entry<String, Histogram> histogram : t.histograms().entrySet())
+                jsonTimings.put(histogram.getKey(), histogram.getValue().toJson());
+
+            json.put(entry.getKey(), jsonTimings);
+        }
+        return json;
+    }
+
+    //============================================================================================================
+    // INNER CLASSES
+    //============================================================================================================
+
+    public static class Timings
+    {
+        public final Histogram queue = new Histogram();
+        public final Histogram connect = new Histogram();
+        public final Histogram requestWrite = new Histogram();
+        public final Histogram timeToFirstByte = new Histogram();
+        public final Histogram bodyRead = new Histogram();
+        public final Histogram total = new Histogram();
+
+        public final AtomicLong calls = new AtomicLong();
+        public final AtomicLong failures = new AtomicLong();
+        public final AtomicLong bytesOut = new AtomicLong();
+        public final AtomicLong bytesIn = new AtomicLong();
+
+        void record(TransferStats stats)
+        {
+            calls.incrementAndGet();
+            bytesOut.addAndGet(stats.requestWireBytes);
+            bytesIn.addAndGet(stats.responseWireBytes);
+            total.record(stats.totalMs);
+
+            if (null != stats.failure)
+            {
+                failures.incrementAndGet();
+                return;
+            }
+
+            connect.record(stats.connectMs);
+            requestWrite.record(stats.requestWriteMs);
+            timeToFirstByte.record(stats.timeToFirstByteMs);
+            bodyRead.record(stats.bodyReadMs);
+        }
+
+        Map<String, Histogram> histograms()
+        {
+            Map<String, Histogram> map = new TreeMap<String, Histogram>();
+            map.put("queue", queue);
+            map.put("connect", connect);
+            map.put("write", requestWrite);
+            map.put("ttfb", timeToFirstByte);
+            map.put("body", bodyRead);
+            map.put("total", total);
+            return map;
+        }
+    }
+
+    /**
+     * Fixed bucket millisecond histogram. Percentiles are approximated by the upper bound of the bucket they fall in.
+     */
+    public static class Histogram
+    {
+        /**
+         * Upper bounds (inclusive) in ms. Anything larger goes in the final overflow bucket
+         */
+        public static final long[] BUCKETS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+        private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS_MS.length + 1);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        public void record(long ms)
+        {
+            if (ms < 0)
+                ms = 0;
+
+            int bucket = 0;
+            while (bucket < BUCKETS_MS.length && ms > BUCKETS_MS[bucket])
+                bucket++;
+
+            mCounts.incrementAndGet(bucket);
+            mCount.incrementAndGet();
+            mSum.addAndGet(ms);
+
+            long max;
+            while (ms > (max = mMax.get()) && !mMax.compareAndSet(max, ms))
+            {
+                //retry
+            }
+        }
+
+        public long getCount()
+        {
+            return mCount.get();
+        }
+
+        public long getMeanMs()
+        {
+            long count = mCount.get();
+            return count == 0 ? 0 : mSum.get() / count;
+        }
+
+        public long getMaxMs()
+        {
+            return mMax.get();
+        }
+
+        /**
+         * @param percentile 0 - 100
+         * @return the upper bound of the bucket the percentile falls in, capped at the max seen
+         */
+        public long getPercentileMs(double percentile)
+        {
+            long count = mCount.get();
+            if (count == 0)
+                return 0;
+
+            long target = (long) Math.ceil(count * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS_MS.length; i++)
+            {
+                seen += mCounts.get(i);
+                if (seen >= target)
+                    return Math.min(BUCKETS_MS[i], mMax.get());
+            }
+            return mMax.get();
+        }
+
+        public JSONObject toJson() throws JSONException
+        {
+            JSONObject json = new JSONObject();
+            json.put("count", getCount());
+            json.put("meanMs", getMeanMs());
+            json.put("p50Ms", getPercentileMs(50));
+            json.put("p90Ms", getPercentileMs(90));
+            json.put("p99Ms", getPercentileMs(99));
+            json.put("maxMs", getMaxMs());
+
+            JSONArray buckets = new JSONArray();
+            for (int i = 0; i < mCounts.length(); i++)
+                buckets.put(mCounts.get(i));
+            json.put("buckets", buckets);
+            return json;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "n=" + getCount() +
+                    " mean=" + getMeanMs() +
+                    " p50=" + getPercentileMs(50) +
+                    " p90=" + getPercentileMs(90) +
+                    " p99=" + getPercentileMs(99) +
+                    " max=" + getMaxMs();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.doridori.lib.io.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estimates how often {@link HttpClient} calls can reuse a kept alive connection.
+ *
+ * HttpUrlConnection owns the actual sockets and pools them itself (see the "http.keepAlive", "http.maxConnections" and
+ * "http.keepAliveDuration" system properties), without saying whether a given request got a pooled socket. This class does not hold, cap or
+ * hand out any connections. It mirrors the platform pool's rules from what the client can see: a call that finished
+ * with its response drained and without "Connection: close" should have left an idle connection behind, which is
+ * expected to stay usable for keepAliveMs, with at most maxIdlePerHost kept per host. A call that starts while such a
+ * slot exists is counted as an estimated hit, anything else as an estimated miss.
+ *
+ * The estimate is wrong when the platform (or the server) drops idle connections earlier than configured, or when
+ * other code shares the platform pool. HttpClientTest in the Benchmarks module compares it with the sockets a loopback
+ * server actually accepted.
+ *
+ * Thread safe.
+ *
+ * @author dorian cussen
+ */
+public class KeepAlivePool
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    /**
+     * Platform defaults when the system properties are not set
+     */
+    public static final int DEFAULT_MAX_IDLE_PER_HOST = 5;
+    public static final long DEFAULT_KEEP_ALIVE_MS = 5 * 60 * 1000;
+
+    private final int mMaxIdlePerHost;
+    private final long mKeepAliveMs;
+
+    /**
+     * host key -> expiry times of its idle connections, oldest first
+     */
+    private final Map<String, ArrayDeque<Long>> mIdle = new HashMap<String, ArrayDeque<Long>>();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * Mirrors the platform pool as configured by the "http.keepAlive", "http.maxConnections" and
+     * "http.keepAliveDuration" system properties, falling back to the platform defaults
+     */
+    public KeepAlivePool()
+    {
+        this(Boolean.parseBoolean(System.getProperty("http.keepAlive", "true")) ?
+                        Integer.getInteger("http.maxConnections", DEFAULT_MAX_IDLE_PER_HOST) : 0,
+                Long.getLong("http.keepAliveDuration", DEFAULT_KEEP_ALIVE_MS));
+    }
+
+    /**
+     * These only describe the pool being mirrored, they do not change it
+     *
+     * @param maxIdlePerHost max idle connections the platform keeps per host
+     * @param keepAliveMs how long the platform keeps an idle connection
+     */
+    public KeepAlivePool(int maxIdlePerHost, long keepAliveMs)
+    {
+        if (maxIdlePerHost < 0)
+            throw new IllegalArgumentException("maxIdlePerHost must be >= 0");
+        if (keepAliveMs < 0)
+            throw new IllegalArgumentException("keepAliveMs must be >= 0");
+
+        mMaxIdlePerHost = maxIdlePerHost;
+        mKeepAliveMs = keepAliveMs;
+    }
+
+    //============================================================================================================
+    // POOL
+    //============================================================================================================
+
+    /**
+     * Call before a request is made to a host
+     *
+     * @return true if an idle connection is expected to be reused
+     */
+    public boolean acquire(@NotNull URL url)
+    {
+        String key = hostKey(url);
+        long now = System.currentTimeMillis();
+        boolean hit = false;
+
+        synchronized (mIdle)
+        {
+            ArrayDeque<Long> idle = mIdle.get(key);
+            if (null != idle)
+            {
+                while (!idle.isEmpty() && idle.peekFirst() <= now)
+                    idle.pollFirst();
+
+                hit = null != idle.pollLast();
+
+                if (idle.isEmpty())
+                    mIdle.remove(key);
+            }
+        }
+
+        if (hit)
+            mHits.incrementAndGet();
+        else
+            mMisses.incrementAndGet();
+
+        return hit;
+    }
+
+    /**
+     * Call once a request has completed and its response body has been drained
+     *
+     * @param reusable false if the connection was closed or failed
+     */
+    public void release(@NotNull URL url, boolean reusable)
+    {
+        if (!reusable || mMaxIdlePerHost == 0)
+            return;
+
+        String key = hostKey(url);
+        long expiry = System.currentTimeMillis() + mKeepAliveMs;
+
+        synchronized (mIdle)
+        {
+            ArrayDeque<Long> idle = mIdle.get(key);
+            if (null == idle)
+            {
+                idle = new ArrayDeque<Long>(mMaxIdlePerHost);
+                mIdle.put(key, idle);
+            }
+
+            //evict the oldest
+            if (idle.size() >= mMaxIdlePerHost)
+                idle.pollFirst();
+
+            idle.addLast(expiry);
+        }
+    }
+
+    public void evictAll()
+    {
+        synchronized (mIdle)
+        {
+            mIdle.clear();
+        }
+    }
+
+    //============================================================================================================
+    // STATS
+    //============================================================================================================
+
+    /**
+     * @return calls expected to have reused an idle connection, see the class doc for why this is an estimate
+     */
+    public long getEstimatedHitCount()
+    {
+        return mHits.get();
+    }
+
+    /**
+     * @return calls expected to have opened a new connection
+     */
+    public long getEstimatedMissCount()
+    {
+        return mMisses.get();
+    }
+
+    public int getIdleCount(@NotNull URL url)
+    {
+        synchronized (mIdle)
+        {
+            ArrayDeque<Long> idle = mIdle.get(hostKey(url));
+            return null == idle ? 0 : idle.size();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "KeepAlivePool estimatedHits=" + getEstimatedHitCount() + " estimatedMisses=" + getEstimatedMissCount();
+    }
+
+    //============================================================================================================
+    // HELPERS
+    //============================================================================================================
+
+    static String hostKey(@NotNull URL url)
+    {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol() + "://" + url.getHost() + ":" + port;
+    }
+}
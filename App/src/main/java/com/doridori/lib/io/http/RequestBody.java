@@ -0,0 +1,262 @@
+package com.doridori.lib.io.http;
+
+import com.squareup.mimecraft.FormEncoding;
+import com.squareup.mimecraft.Part;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+/**
+ * A request body that is written directly to the connections output stream. Used with
+ * {@link HttpMethodsHelper#post(java.net.HttpURLConnection, RequestBody)} and friends.
+ *
+ * If {@link #contentLength()} is known the connection is put into fixed length streaming mode, otherwise chunked
+ * streaming mode is used. Either way HttpUrlConnection will not buffer the whole body internally.
+ *
+ * @author dorian cussen
+ */
+public abstract class RequestBody
+{
+    //============================================================================================================
+    // ABSTRACT
+    //============================================================================================================
+
+    /**
+     * @return the value of the Content-Type header
+     */
+    @NotNull
+    public abstract String contentType();
+
+    /**
+     * @return the length in bytes or -1 if unknown (in which case chunked streaming mode is used)
+     */
+    public long contentLength()
+    {
+        return -1;
+    }
+
+    /**
+     * Write the body. Do not close the passed stream.
+     */
+    public abstract void writeTo(@NotNull OutputStream out) throws IOException;
+
+    /**
+     * @return false if {@link #writeTo(java.io.OutputStream)} can only be called once, in which case the call will not be
+     * retried
+     */
+    public boolean isRepeatable()
+    {
+        return true;
+    }
+
+    //============================================================================================================
+    // FACTORIES
+    //============================================================================================================
+
+    public static RequestBody create(@NotNull final String contentType, @NotNull final byte[] bytes)
+    {
+        return new RequestBody()
+        {
+            @NotNull
+            @Override
+            public String contentType()
+            {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength()
+            {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(@NotNull OutputStream out) throws IOException
+            {
+                out.write(bytes);
+            }
+        };
+    }
+
+    /**
+     * The file is opened on write and read through its channel, so nothing is held in memory
+     */
+    public static RequestBody create(@NotNull final String contentType, @NotNull final File file)
+    {
+        return new RequestBody()
+        {
+            @NotNull
+            @Override
+            public String contentType()
+            {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength()
+            {
+                return file.length();
+            }
+
+            @Override
+            public void writeTo(@NotNull OutputStream out) throws IOException
+            {
+                FileInputStream in = null;
+                try
+                {
+                    in = new FileInputStream(file);
+                    transfer(in.getChannel(), 0, file.length(), out);
+                }
+                finally
+                {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes from the channels current position to its end. The channel is not closed.
+     */
+    public static RequestBody create(@NotNull final String contentType, @NotNull final FileChannel channel) throws IOException
+    {
+        final long position = channel.position();
+        final long length = channel.size() - position;
+
+        return new RequestBody()
+        {
+            @NotNull
+            @Override
+            public String contentType()
+            {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength()
+            {
+                return length;
+            }
+
+            @Override
+            public void writeTo(@NotNull OutputStream out) throws IOException
+            {
+                transfer(channel, position, length, out);
+            }
+        };
+    }
+
+    /**
+     * The stream is closed once written.
+     *
+     * @param length pass -1 if unknown
+     */
+    public static RequestBody create(@NotNull final String contentType, @NotNull final InputStream in, final long length)
+    {
+        return new RequestBody()
+        {
+            @NotNull
+            @Override
+            public String contentType()
+            {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength()
+            {
+                return length;
+            }
+
+            @Override
+            public boolean isRepeatable()
+            {
+                return false;
+            }
+
+            @Override
+            public void writeTo(@NotNull OutputStream out) throws IOException
+            {
+                try
+                {
+                    IOUtils.copyLarge(in, out);
+                }
+                finally
+                {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a mimecraft {@link Part} (e.g. {@link com.squareup.mimecraft.Multipart} or
+     * {@link com.squareup.mimecraft.FormEncoding}). The Content-Type (including any multipart boundary) is taken from the
+     * parts headers.
+     */
+    public static RequestBody create(@NotNull final Part part)
+    {
+        final Map<String, String> headers = part.getHeaders();
+        final String contentType = headers.get("Content-Type");
+        final String contentLength = headers.get("Content-Length");
+
+        if (null == contentType)
+            throw new IllegalArgumentException("Part must have a Content-Type header");
+
+        return new RequestBody()
+        {
+            @NotNull
+            @Override
+            public String contentType()
+            {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength()
+            {
+                return null == contentLength ? -1 : Long.parseLong(contentLength);
+            }
+
+            @Override
+            public boolean isRepeatable()
+            {
+                //multiparts may contain stream parts
+                return part instanceof FormEncoding;
+            }
+
+            @Override
+            public void writeTo(@NotNull OutputStream out) throws IOException
+            {
+                part.writeBodyTo(out);
+            }
+        };
+    }
+
+    //============================================================================================================
+    // HELPERS
+    //============================================================================================================
+
+    private static void transfer(FileChannel channel, long position, long length, OutputStream out) throws IOException
+    {
+        WritableByteChannel target = Channels.newChannel(out);
+        long written = 0;
+        while (written < length)
+        {
+            long count = channel.transferTo(position + written, length - written, target);
+            if (count <= 0)
+                throw new IOException("Channel ended after " + written + " of " + length + " bytes");
+            written += count;
+        }
+    }
+}
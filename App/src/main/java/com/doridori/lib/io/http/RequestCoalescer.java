@@ -0,0 +1,225 @@
+package com.doridori.lib.io.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight de-duplication of identical concurrent calls. The first caller for a key (the leader) makes the call,
+ * anyone calling with the same key while it is in flight (followers) waits for and gets the leaders result (or
+ * exception) instead of making their own call. Once the call completes the key is free again, so nothing is cached.
+ *
+ * The call itself runs on the coalescers executor, not on any callers thread, and every caller (the leader included)
+ * just waits for it. So cancellation is per waiter - interrupting one only stops that one waiting, the call still
+ * completes and the other waiters still get its result.
+ *
+ * Only use for calls whose result can be shared i.e. buffered GETs, not streamed bodies.
+ *
+ * @author dorian cussen
+ */
+public class RequestCoalescer
+{
+    private final Executor mExecutor;
+    private final Map<String, InFlightCall<?>> mInFlight = new HashMap<String, InFlightCall<?>>();
+    private final AtomicLong mLeaderCount = new AtomicLong();
+    private final AtomicLong mFollowerCount = new AtomicLong();
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * Calls run on a pool of daemon threads that grows as needed and shrinks after 60s idle
+     */
+    public RequestCoalescer()
+    {
+        this(new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new CallThreadFactory()));
+    }
+
+    /**
+     * @param executor runs the calls. Must not run them on the calling thread or interrupting the leader will fail
+     *                 the call for everyone again
+     */
+    public RequestCoalescer(@NotNull Executor executor)
+    {
+        mExecutor = executor;
+    }
+
+    //============================================================================================================
+    // PUBLIC
+    //============================================================================================================
+
+    /**
+     * @param key see {@link #key(String, java.net.URL, java.util.Map)}
+     * @param call made once per key while in flight, on the executor
+     * @return the result of the call, shared between all callers for this key
+     * @throws InterruptedIOException if this waiter is interrupted
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(@NotNull String key, @NotNull Callable<T> call) throws IOException
+    {
+        InFlightCall<T> task;
+        boolean leader = false;
+
+        synchronized (mInFlight)
+        {
+            task = (InFlightCall<T>) mInFlight.get(key);
+            if (null == task)
+            {
+                task = new InFlightCall<T>(key, call);
+                mInFlight.put(key, task);
+                leader = true;
+            }
+        }
+
+        if (leader)
+        {
+            mLeaderCount.incrementAndGet();
+            try
+            {
+                mExecutor.execute(task);
+            }
+            catch (RejectedExecutionException e)
+            {
+                //fails anyone who already joined too, and frees the key
+                task.fail(new IOException("Could not start call " + key + ": " + e));
+            }
+        }
+        else
+        {
+            mFollowerCount.incrementAndGet();
+        }
+
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for in flight call " + key);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause.toString());
+        }
+    }
+
+    /**
+     * @param varyHeaders any request headers that change the response, can be null
+     * @return a key made of the method, url and headers (in a stable order)
+     */
+    public static String key(@NotNull String method, @NotNull URL url, @Nullable Map<String, String> varyHeaders)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(method);
+        builder.append(' ');
+        builder.append(url.toExternalForm());
+
+        if (null != varyHeaders && !varyHeaders.isEmpty())
+        {
+            for (Map.Entry<String, String> header : new TreeMap<String, String>(varyHeaders).entrySet())
+            {
+                builder.append('\n');
+                builder.append(header.getKey().toLowerCase());
+                builder.append(':');
+                builder.append(header.getValue());
+            }
+        }
+
+        return builder.toString();
+    }
+
+    //============================================================================================================
+    // STATS
+    //============================================================================================================
+
+    public long getLeaderCount()
+    {
+        return mLeaderCount.get();
+    }
+
+    /**
+     * @return calls that were saved by attaching to an in flight call
+     */
+    public long getFollowerCount()
+    {
+        return mFollowerCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RequestCoalescer leaders=" + getLeaderCount() + " followers=" + getFollowerCount();
+    }
+
+    //============================================================================================================
+    // INNER CLASSES
+    //============================================================================================================
+
+    /**
+     * Frees its key once done, however that happens
+     */
+    private class InFlightCall<T> extends FutureTask<T>
+    {
+        private final String mKey;
+
+        private InFlightCall(String key, Callable<T> call)
+        {
+            super(call);
+            mKey = key;
+        }
+
+        void fail(Throwable t)
+        {
+            setException(t);
+        }
+
+        @Override
+        protected void done()
+        {
+            synchronized (mInFlight)
+            {
+                if (mInFlight.get(mKey) == this)
+                    mInFlight.remove(mKey);
+            }
+        }
+    }
+
+    private static class CallThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable r)
+        {
+            Thread thread = new Thread(r, "RequestCoalescer #" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
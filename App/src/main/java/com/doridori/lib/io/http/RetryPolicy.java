@@ -0,0 +1,391 @@
+package com.doridori.lib.io.http;
+
+import com.doridori.lib.io.http.HttpMethodsHelper.HttpStatusCodeException;
+import com.doridori.lib.util.XLog;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry and circuit breaker policy used by {@link HttpClient}. Set on
+ * {@link HttpMethodsHelper.DefaultConnectionConfig#setRetryPolicy(RetryPolicy)}.
+ *
+ * <ul>
+ *     <li>Only idempotent methods (GET, HEAD, PUT, DELETE, OPTIONS) are retried, unless the connection was refused (so the
+ *     request never reached the server) or {@link #setRetryNonIdempotent(boolean)} is set</li>
+ *     <li>IOExceptions and 408, 429, 500, 502, 503 and 504 responses are retried</li>
+ *     <li>Delays are exponential with full jitter, i.e. random between 0 and min(maxDelay, baseDelay * 2^attempt), so
+ *     clients do not all retry at once. A Retry-After header overrides this (capped at maxDelay)</li>
+ *     <li>Each host has a circuit breaker. After failureThreshold consecutive failures (IOExceptions or 5xx) calls to that
+ *     host fail fast with a {@link CircuitOpenException} for openMs. After that one trial call is let through - if it
+ *     works the breaker closes, if not it opens again</li>
+ * </ul>
+ *
+ * Thread safe. Share one instance between calls so the breakers and counts mean something.
+ *
+ * @author dorian cussen
+ */
+public class RetryPolicy
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    private int mMaxRetries = 2;
+    private long mBaseDelayMs = 500;
+    private long mMaxDelayMs = 30 * 1000;
+    private boolean mRetryNonIdempotent = false;
+    private int mFailureThreshold = 5;
+    private long mOpenMs = 30 * 1000;
+
+    private final Random mRandom = new Random();
+    private final Map<String, CircuitBreaker> mBreakers = new HashMap<String, CircuitBreaker>();
+
+    private final AtomicLong mRetryCount = new AtomicLong();
+    private final AtomicLong mBreakerOpenedCount = new AtomicLong();
+    private final AtomicLong mBreakerClosedCount = new AtomicLong();
+    private final AtomicLong mFailFastCount = new AtomicLong();
+
+    //============================================================================================================
+    // CALLED BY HttpClient
+    //============================================================================================================
+
+    /**
+     * @throws CircuitOpenException if the hosts breaker is open
+     */
+    void beforeAttempt(@NotNull URL url) throws CircuitOpenException
+    {
+        if (!getBreaker(url).allowRequest(System.currentTimeMillis()))
+        {
+            mFailFastCount.incrementAndGet();
+            throw new CircuitOpenException(KeepAlivePool.hostKey(url));
+        }
+    }
+
+    void onSuccess(@NotNull URL url)
+    {
+        getBreaker(url).onSuccess();
+    }
+
+    void onFailure(@NotNull URL url, @NotNull IOException e)
+    {
+        if (e instanceof CircuitOpenException)
+            return;
+
+        //4xx means the host is up
+        if (e instanceof HttpStatusCodeException && ((HttpStatusCodeException) e).getStatusCode() < 500)
+        {
+            getBreaker(url).onSuccess();
+            return;
+        }
+
+        getBreaker(url).onFailure(System.currentTimeMillis());
+    }
+
+    /**
+     * The attempt threw something other than an IOException, most likely a bug on our side rather than the host, so
+     * it counts as neither success nor failure. Just gives up the half open trial if this was it, otherwise no other
+     * call could ever get through
+     */
+    void onAbandoned(@NotNull URL url)
+    {
+        getBreaker(url).onAbandoned();
+    }
+
+    /**
+     * @param attempt zero based attempt that just failed
+     */
+    boolean shouldRetry(@NotNull String method, int attempt, @NotNull IOException e)
+    {
+        if (attempt >= mMaxRetries || e instanceof CircuitOpenException)
+            return false;
+
+        boolean retryable;
+        if (e instanceof HttpStatusCodeException)
+            retryable = isRetryableStatus(((HttpStatusCodeException) e).getStatusCode());
+        else
+            retryable = true;
+
+        if (!retryable)
+            return false;
+
+        //the request never left the device so is safe to resend whatever the method
+        if (e instanceof ConnectException)
+            return true;
+
+        return mRetryNonIdempotent || isIdempotent(method);
+    }
+
+    /**
+     * @param attempt zero based attempt that just failed
+     */
+    long getDelayMs(int attempt, @NotNull IOException e)
+    {
+        mRetryCount.incrementAndGet();
+
+        if (e instanceof HttpStatusCodeException)
+        {
+            long retryAfterMs = parseRetryAfterMs(((HttpStatusCodeException) e).getRetryAfter(), System.currentTimeMillis());
+            if (retryAfterMs >= 0)
+                return Math.min(retryAfterMs, mMaxDelayMs);
+        }
+
+        long ceiling = mBaseDelayMs << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > mMaxDelayMs)
+            ceiling = mMaxDelayMs;
+
+        synchronized (mRandom)
+        {
+            return (long) (mRandom.nextDouble() * ceiling);
+        }
+    }
+
+    //============================================================================================================
+    // SETTERS
+    //============================================================================================================
+
+    public void setMaxRetries(int maxRetries)
+    {
+        mMaxRetries = maxRetries;
+    }
+
+    public void setBaseDelayMs(long baseDelayMs)
+    {
+        mBaseDelayMs = baseDelayMs;
+    }
+
+    public void setMaxDelayMs(long maxDelayMs)
+    {
+        mMaxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * @param retryNonIdempotent if true POSTs are retried too - only use if the server de-dupes them
+     */
+    public void setRetryNonIdempotent(boolean retryNonIdempotent)
+    {
+        mRetryNonIdempotent = retryNonIdempotent;
+    }
+
+    /**
+     * @param failureThreshold consecutive failures before a hosts breaker opens
+     * @param openMs how long the breaker stays open before a trial call is allowed
+     */
+    public void setCircuitBreaker(int failureThreshold, long openMs)
+    {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("failureThreshold must be >= 1");
+
+        mFailureThreshold = failureThreshold;
+        mOpenMs = openMs;
+    }
+
+    //============================================================================================================
+    // STATS
+    //============================================================================================================
+
+    public long getRetryCount()
+    {
+        return mRetryCount.get();
+    }
+
+    public long getBreakerOpenedCount()
+    {
+        return mBreakerOpenedCount.get();
+    }
+
+    public long getBreakerClosedCount()
+    {
+        return mBreakerClosedCount.get();
+    }
+
+    public long getFailFastCount()
+    {
+        return mFailFastCount.get();
+    }
+
+    public boolean isOpen(@NotNull URL url)
+    {
+        return getBreaker(url).isOpen();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RetryPolicy retries=" + getRetryCount() +
+                " breakerOpened=" + getBreakerOpenedCount() +
+                " breakerClosed=" + getBreakerClosedCount() +
+                " failFast=" + getFailFastCount();
+    }
+
+    //============================================================================================================
+    // HELPERS
+    //============================================================================================================
+
+    static boolean isIdempotent(@NotNull String method)
+    {
+        return "GET".equals(method) ||
+                "HEAD".equals(method) ||
+                "PUT".equals(method) ||
+                "DELETE".equals(method) ||
+                "OPTIONS".equals(method);
+    }
+
+    static boolean isRetryableStatus(int statusCode)
+    {
+        switch (statusCode)
+        {
+            case 408:
+            case 429:
+            case 500:
+            case 502:
+            case 503:
+            case 504:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param retryAfter either delta seconds or a http date
+     * @return -1 if null or not parseable
+     */
+    static long parseRetryAfterMs(@Nullable String retryAfter, long now)
+    {
+        if (null == retryAfter)
+            return -1;
+
+        String value = retryAfter.trim();
+        try
+        {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        }
+        catch (NumberFormatException e)
+        {
+            //try as date below
+        }
+
+        try
+        {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return Math.max(0, format.parse(value).getTime() - now);
+        }
+        catch (ParseException e)
+        {
+            return -1;
+        }
+    }
+
+    private CircuitBreaker getBreaker(@NotNull URL url)
+    {
+        String key = KeepAlivePool.hostKey(url);
+        synchronized (mBreakers)
+        {
+            CircuitBreaker breaker = mBreakers.get(key);
+            if (null == breaker)
+            {
+                breaker = new CircuitBreaker(key);
+                mBreakers.put(key, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    private class CircuitBreaker
+    {
+        private final String mHostKey;
+        private int mConsecutiveFailures = 0;
+        private long mOpenUntil = 0;
+        private boolean mOpen = false;
+        private boolean mTrialInFlight = false;
+
+        private CircuitBreaker(String hostKey)
+        {
+            mHostKey = hostKey;
+        }
+
+        synchronized boolean allowRequest(long now)
+        {
+            if (!mOpen)
+                return true;
+
+            //half open - let one trial call through
+            if (now >= mOpenUntil && !mTrialInFlight)
+            {
+                mTrialInFlight = true;
+                return true;
+            }
+
+            return false;
+        }
+
+        synchronized void onSuccess()
+        {
+            mConsecutiveFailures = 0;
+            mTrialInFlight = false;
+
+            if (mOpen)
+            {
+                mOpen = false;
+                mBreakerClosedCount.incrementAndGet();
+                XLog.i("circuit closed for " + mHostKey);
+            }
+        }
+
+        synchronized void onFailure(long now)
+        {
+            mConsecutiveFailures++;
+
+            if (mTrialInFlight || (!mOpen && mConsecutiveFailures >= mFailureThreshold))
+            {
+                if (!mOpen)
+                    mBreakerOpenedCount.incrementAndGet();
+
+                mOpen = true;
+                mTrialInFlight = false;
+                mOpenUntil = now + mOpenMs;
+                XLog.w("circuit opened for " + mHostKey);
+            }
+        }
+
+        synchronized void onAbandoned()
+        {
+            //still open, the next call after this is the trial
+            mTrialInFlight = false;
+        }
+
+        synchronized boolean isOpen()
+        {
+            return mOpen;
+        }
+    }
+
+    //============================================================================================================
+    // EXCEPTIONS
+    //============================================================================================================
+
+    /**
+     * Thrown without making a call when the hosts circuit breaker is open
+     */
+    public static class CircuitOpenException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String hostKey)
+        {
+            super("Circuit open for " + hostKey);
+        }
+    }
+}
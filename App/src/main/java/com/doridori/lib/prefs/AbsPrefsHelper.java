@@ -4,45 +4,188 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.doridori.lib.util.XLog;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * In your project you can extends this class and add your project specific KEYS
  *
+ * Backed by the "defaultPrefs" XML file unless {@link #setUseLogStore(boolean)} is called first, in which case an
+ * {@link AppendLogPrefs} is used instead (and the XML migrated into it)
+ *
+ * Reads are served from an immutable snapshot of the prefs without taking a lock. Editors from
+ * {@link #getEditor(android.content.Context)} write through to the backing prefs on commit() / apply(), with the
+ * platforms usual durability, and update the snapshot at the same time. The asyncPut methods and editors from
+ * {@link #getCoalescingEditor(android.content.Context)} show up in the snapshot straight away but are only written to
+ * the backing prefs once per flush window (see {@link #setFlushWindowMs(long)}). Until then they only exist in memory,
+ * and unlike apply() the platform does not wait for them when the app is paused, so call {@link #flushBlocking()}
+ * from onPause() if they must survive the process being killed. A flush that fails puts its values back and is retried. Writes made to the backing prefs directly are not seen by
+ * the snapshot, so dont mix the two.
+ *
+ * As well as String and boolean there are typed int / long / float / double / byte[] accessors, read unboxed from the
+ * snapshot (see {@link PrefsTable}) so numbers dont need storing as Strings and parsing on every read. UI can bind to a
+ * key with {@link #addListener(String, OnPrefChangedListener)}, which is only called when that keys value changes.
+ *
+ * The first access loads the whole file, so call {@link #preload(android.content.Context)} from Application.onCreate()
+ * to do that in the background. Main thread accesses that still end up waiting on the load are logged and counted in
+ * {@link #getMetrics()}.
+ *
  * User: doriancussen
  * Date: 01/11/2012
  */
 public abstract class AbsPrefsHelper {
 
+    public static final String PREFS_NAME = "defaultPrefs";
+    public static final long DEFAULT_FLUSH_WINDOW_MS = 100;
+    /**
+     * Wait before retrying a failed flush, so a full disk isnt hammered
+     */
+    private static final long FLUSH_RETRY_MS = 1000;
+
+    /**
+     * Pending value for a removed key
+     */
+    private static final Object REMOVED = new Object();
+
+    private static final PrefsMetrics sMetrics = new PrefsMetrics();
+
     private static SharedPreferences sSharedPreferences;
+    private static boolean sUseLogStore;
+
+    /**
+     * Immutable, replaced whole on every write
+     */
+    private static volatile PrefsTable sSnapshot;
+    private static final CountDownLatch sReady = new CountDownLatch(1);
+    private static boolean sPreloadStarted;
+
+    /**
+     * Guarded by itself
+     */
+    private static final Map<String, List<OnPrefChangedListener>> sListeners = new HashMap<String, List<OnPrefChangedListener>>();
+
+    /**
+     * Guards the pending state below and the swapping of {@link #sSnapshot}
+     */
+    private static final Object sWriteLock = new Object();
+    /**
+     * Held for the whole of a flush so flushes reach the backing prefs in order
+     */
+    private static final Object sFlushLock = new Object();
+    private static Map<String, Object> sPending = new HashMap<String, Object>();
+    private static boolean sPendingClear;
+    private static long sFirstPendingMs;
+    private static boolean sFlushScheduled;
+    /**
+     * The calling threads open {@link #batch(android.content.Context, Runnable)}, if any
+     */
+    private static final ThreadLocal<Batch> sBatch = new ThreadLocal<Batch>();
+    private static long sFlushWindowMs = DEFAULT_FLUSH_WINDOW_MS;
+    private static ScheduledExecutorService sFlusher;
+
+    /**
+     * Call before the first access (e.g. in Application.onCreate()). Writes then append just the changed keys rather
+     * than rewriting the whole XML file, which matters once there are a few hundred keys. Existing XML values are
+     * migrated in the background the first time
+     *
+     * @param useLogStore true to use an {@link AppendLogPrefs}
+     */
+    public static synchronized void setUseLogStore(boolean useLogStore)
+    {
+        if(null != sSharedPreferences)
+            throw new IllegalStateException("setUseLogStore() must be called before the prefs are first used");
+
+        sUseLogStore = useLogStore;
+    }
+
+    /**
+     * How long writes are held in memory before being flushed, all writes in the window go out as one. The window
+     * starts at the first write, later writes dont extend it. 0 flushes each write on its own (still off the calling
+     * thread)
+     */
+    public static void setFlushWindowMs(long flushWindowMs)
+    {
+        if(flushWindowMs < 0)
+            throw new IllegalArgumentException("flushWindowMs must be >= 0");
+
+        synchronized (sWriteLock)
+        {
+            sFlushWindowMs = flushWindowMs;
+        }
+    }
+
+    public static PrefsMetrics getMetrics()
+    {
+        return sMetrics;
+    }
 
     /**
      * Does file IO on calling thread. Can use {@link #getDefaultSharedPrefsAsync(android.content.Context, couk.doridori.android.lib.prefs.AbsPrefsHelper.PrefsLoader)} if on UI
      *
+     * Writes made to these directly bypass the snapshot, use {@link #getEditor(android.content.Context)} instead
+     *
      * @param context
      * @return
      */
     public static synchronized SharedPreferences getDefaultSharedPreferences(Context context){
         if(sSharedPreferences == null)
-            sSharedPreferences = context.getSharedPreferences("defaultPrefs", Context.MODE_PRIVATE);
+        {
+            if(sUseLogStore)
+                sSharedPreferences = AppendLogPrefs.open(context.getApplicationContext(), PREFS_NAME);
+            else
+                sSharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        }
 
         return sSharedPreferences;
     }
 
-    public static synchronized SharedPreferences.Editor getEditor(Context ctx){
-        return getDefaultSharedPreferences(ctx).edit();
+    /**
+     * @return an editor whose commit() / apply() go straight to the backing prefs (so apply() is waited for on pause as
+     *         usual) and update the snapshot, replacing any not yet flushed asyncPut of the same keys
+     */
+    public static SharedPreferences.Editor getEditor(Context ctx){
+        return new SnapshotEditor(ctx.getApplicationContext(), false);
+    }
+
+    /**
+     * @return an editor whose changes are coalesced with the asyncPut writes, see the class doc for when they reach the
+     *         backing prefs. commit() flushes everything pending on the calling thread, apply() leaves it to the next
+     *         flush
+     */
+    public static SharedPreferences.Editor getCoalescingEditor(Context ctx)
+    {
+        return new SnapshotEditor(ctx.getApplicationContext(), true);
     }
 
     /**
-     * Loads off the UI thread
+     * Loads off the UI thread. If already loaded the loader is called straight away, on the calling thread
      *
      * @param context
      * @param loader
      */
-    public static synchronized void getDefaultSharedPrefsAsync(final Context context, final PrefsLoader loader)
+    public static void getDefaultSharedPrefsAsync(final Context context, final PrefsLoader loader)
     {
-        if(null == sSharedPreferences)
+        if(isReady())
         {
-            loader.loaded(sSharedPreferences);
+            loader.loaded(getDefaultSharedPreferences(context));
             return;
         }
 
@@ -50,20 +193,81 @@ public abstract class AbsPrefsHelper {
             @Override
             protected SharedPreferences doInBackground(Void... params)
             {
+                snapshot(context);
                 return getDefaultSharedPreferences(context);
             }
 
             @Override
             protected void onPostExecute(SharedPreferences prefs)
             {
-                sSharedPreferences = prefs;
                 loader.loaded(prefs);
             }
         }.execute();
 
     }
 
-    public static synchronized void asyncCommit(final SharedPreferences.Editor editor){
+    /**
+     * Starts loading the prefs on a background thread, call as early as possible (Application.onCreate()) so they
+     * are ready by the time the first Activity reads them. Only the first call does anything, unless the load failed
+     * (which is logged) in which case the next call tries again
+     */
+    public static void preload(Context context)
+    {
+        final Context appContext = context.getApplicationContext();
+        synchronized (sWriteLock)
+        {
+            if(sPreloadStarted || null != sSnapshot)
+                return;
+            sPreloadStarted = true;
+        }
+
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long start = System.currentTimeMillis();
+                try
+                {
+                    snapshot(appContext);
+                    XLog.i("preloaded prefs in {}ms", System.currentTimeMillis() - start);
+                }
+                catch (RuntimeException e)
+                {
+                    //sReady is only counted down by a load that worked, so waiters carry on until another access loads
+                    XLog.e("Could not preload prefs", e);
+                    synchronized (sWriteLock)
+                    {
+                        sPreloadStarted = false;
+                    }
+                }
+            }
+        }, "AbsPrefsHelper preload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return true if the prefs are loaded, reads will not block
+     */
+    public static boolean isReady()
+    {
+        return null != sSnapshot;
+    }
+
+    /**
+     * Blocks until the prefs are loaded (by {@link #preload(android.content.Context)} or another access), e.g. from a
+     * splash screen or a background job that should not do the load itself
+     *
+     * @return false if the timeout passed first, which includes a failed preload with no other access since
+     */
+    public static boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return sReady.await(timeout, unit);
+    }
+
+    public static void asyncCommit(final SharedPreferences.Editor editor){
         if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD){
             editor.apply();
         }else{
@@ -77,34 +281,664 @@ public abstract class AbsPrefsHelper {
         }
     }
 
-    public static synchronized void removePref(Context ctx, String key){
-        SharedPreferences.Editor editor = getEditor(ctx);
-        editor.remove(key);
-        asyncCommit(editor);
+    public static void removePref(Context ctx, String key){
+        write(ctx, Collections.<String, Object>singletonMap(key, null), false);
+    }
+
+    public static void asyncPutString(Context ctx, String key, String val){
+        write(ctx, Collections.<String, Object>singletonMap(key, val), false);
+    }
+
+    public static void asyncPutBool(Context ctx, String key, Boolean val){
+        write(ctx, Collections.<String, Object>singletonMap(key, val), false);
+    }
+
+    public static void asyncPutInt(Context ctx, String key, int val)
+    {
+        write(ctx, Collections.<String, Object>singletonMap(key, val), false);
+    }
+
+    public static void asyncPutLong(Context ctx, String key, long val)
+    {
+        write(ctx, Collections.<String, Object>singletonMap(key, val), false);
+    }
+
+    public static void asyncPutFloat(Context ctx, String key, float val)
+    {
+        write(ctx, Collections.<String, Object>singletonMap(key, val), false);
+    }
+
+    /**
+     * Stored in the backing prefs as a tagged String, so only read it back with {@link #getDouble}
+     */
+    public static void asyncPutDouble(Context ctx, String key, double val)
+    {
+        write(ctx, Collections.<String, Object>singletonMap(key, val), false);
+    }
+
+    /**
+     * Stored in the backing prefs as a tagged Base64 String, so only read it back with {@link #getBytes}. The array is
+     * copied, null removes the key
+     */
+    public static void asyncPutBytes(Context ctx, String key, byte[] val)
+    {
+        write(ctx, Collections.<String, Object>singletonMap(key, null == val ? null : val.clone()), false);
+    }
+
+    public static String getString(Context context, String key, String defValue){
+        return snapshot(context).getString(key, defValue);
+    }
+
+    public static boolean getBoolean(Context context, String key, boolean defValue){
+        return snapshot(context).getBoolean(key, defValue);
+    }
+
+    public static int getInt(Context context, String key, int defValue)
+    {
+        return snapshot(context).getInt(key, defValue);
+    }
+
+    public static long getLong(Context context, String key, long defValue)
+    {
+        return snapshot(context).getLong(key, defValue);
+    }
+
+    public static float getFloat(Context context, String key, float defValue)
+    {
+        return snapshot(context).getFloat(key, defValue);
+    }
+
+    public static double getDouble(Context context, String key, double defValue)
+    {
+        return snapshot(context).getDouble(key, defValue);
+    }
+
+    /**
+     * @return a copy of the value, or null if not set
+     */
+    public static byte[] getBytes(Context context, String key)
+    {
+        return snapshot(context).getBytes(key);
+    }
+
+    public static boolean contains(Context context, String key)
+    {
+        return snapshot(context).contains(key);
+    }
+
+    /**
+     * The listener is called on the main thread when the keys value changes, not when it is written with the value it
+     * already has. Held strongly, so remove it when done (e.g. in onDestroy())
+     */
+    public static void addListener(String key, OnPrefChangedListener listener)
+    {
+        synchronized (sListeners)
+        {
+            List<OnPrefChangedListener> listeners = sListeners.get(key);
+            if(null == listeners)
+            {
+                listeners = new ArrayList<OnPrefChangedListener>(1);
+                sListeners.put(key, listeners);
+            }
+            if(!listeners.contains(listener))
+                listeners.add(listener);
+        }
+    }
+
+    public static void removeListener(String key, OnPrefChangedListener listener)
+    {
+        synchronized (sListeners)
+        {
+            List<OnPrefChangedListener> listeners = sListeners.get(key);
+            if(null != listeners && listeners.remove(listener) && listeners.isEmpty())
+                sListeners.remove(key);
+        }
     }
 
-    public static synchronized void asyncPutString(Context ctx, String key, String val){
-        SharedPreferences.Editor editor = getEditor(ctx);
-        editor.putString(key, val);
-        asyncCommit(editor);
+    /**
+     * Runs the edits as one transaction. The asyncPut / coalescing editor writes they make on this thread are held by
+     * the batch (reads inside it still see the old values) and when they return are applied together and flushed
+     * straight away (off the calling thread). If the edits throw nothing they wrote is kept. Other threads writes and
+     * flushes are not held up. Batches can nest, the outermost one applies. {@link #getEditor(android.content.Context)}
+     * editors are not part of the batch
+     */
+    public static void batch(Context ctx, Runnable edits)
+    {
+        snapshot(ctx);
+
+        Batch batch = sBatch.get();
+        if(null == batch)
+        {
+            batch = new Batch();
+            sBatch.set(batch);
+        }
+        batch.mDepth++;
+
+        boolean completed = false;
+        try
+        {
+            edits.run();
+            completed = true;
+        }
+        finally
+        {
+            if(--batch.mDepth == 0)
+            {
+                sBatch.remove();
+                if(completed && (batch.mClear || !batch.mChanges.isEmpty()))
+                    apply(batch.mChanges, batch.mClear, true);
+            }
+        }
     }
 
-    public static synchronized void asyncPutBool(Context ctx, String key, Boolean val){
-        SharedPreferences.Editor editor = getEditor(ctx);
-        editor.putBoolean(key, val);
-        asyncCommit(editor);
+    /**
+     * Starts a flush of anything pending now rather than at the end of the window. Does not block, so it is no
+     * guarantee the values are on disk, see {@link #flushBlocking()}
+     */
+    public static void flush()
+    {
+        synchronized (sWriteLock)
+        {
+            if(hasPendingLocked())
+                scheduleFlushLocked(0);
+        }
     }
 
-    public static synchronized String getString(Context context, String key, String defValue){
-        return getDefaultSharedPreferences(context).getString(key, defValue);
+    /**
+     * Writes anything pending on the calling thread, e.g. from onPause() (as the platform does for apply()) so nothing
+     * written with the asyncPut methods is lost if the process is then killed
+     *
+     * @return false if the write failed, the values are kept pending and retried
+     */
+    public static boolean flushBlocking()
+    {
+        return flushPending();
     }
 
-    public static synchronized boolean getBoolean(Context context, String key, boolean defValue){
-        return getDefaultSharedPreferences(context).getBoolean(key, defValue);
+    //============================================================================================================
+    // SNAPSHOT AND FLUSHING
+    //============================================================================================================
+
+    private static PrefsTable snapshot(Context context)
+    {
+        PrefsTable snapshot = sSnapshot;
+        if(null != snapshot)
+            return snapshot;
+
+        //first access only, or waiting on a load already started elsewhere
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        long start = System.currentTimeMillis();
+
+        SharedPreferences prefs = getDefaultSharedPreferences(context);
+        synchronized (sWriteLock)
+        {
+            if(null == sSnapshot)
+            {
+                sSnapshot = PrefsTable.from(prefs.getAll());
+                sReady.countDown();
+            }
+            snapshot = sSnapshot;
+        }
+
+        if(mainThread)
+        {
+            long blockedMs = System.currentTimeMillis() - start;
+            sMetrics.recordMainThreadBlock(blockedMs);
+            XLog.w("main thread blocked for " + blockedMs + "ms loading prefs, call AbsPrefsHelper.preload() earlier");
+        }
+
+        return snapshot;
     }
 
+    /**
+     * Applies the changes to a copy of the snapshot and queues the ones that change a value for the next flush, or
+     * holds them in the calling threads batch
+     *
+     * @param changes values, or null to remove the key
+     */
+    private static void write(Context context, Map<String, Object> changes, boolean clear)
+    {
+        snapshot(context);
+        sMetrics.recordPuts(Math.max(changes.size(), clear ? 1 : 0));
+
+        Batch batch = sBatch.get();
+        if(null != batch)
+        {
+            if(clear)
+            {
+                batch.mChanges.clear();
+                batch.mClear = true;
+            }
+            batch.mChanges.putAll(changes);
+            return;
+        }
+
+        apply(changes, clear, false);
+    }
+
+    /**
+     * @param flushNow flush straight away rather than at the end of the window
+     */
+    private static void apply(Map<String, Object> changes, boolean clear, boolean flushNow)
+    {
+        List<String> changed = new ArrayList<String>();
+
+        synchronized (sWriteLock)
+        {
+            PrefsTable next = sSnapshot.with(changes, clear, changed);
+            if(changed.isEmpty())
+                return;
+            sSnapshot = next;
+
+            if(clear)
+            {
+                sPendingClear = true;
+                sPending.clear();
+            }
+            for(String key : changed)
+            {
+                Object value = next.toPrefsValue(key);
+                if(null != value)
+                    sPending.put(key, value);
+                else if(!clear)
+                    sPending.put(key, REMOVED);
+            }
+
+            if(sFirstPendingMs == 0)
+                sFirstPendingMs = System.currentTimeMillis();
+
+            scheduleFlushLocked(flushNow ? 0 : sFlushWindowMs);
+        }
+
+        notifyListeners(changed);
+    }
+
+    /**
+     * Writes the changes to the backing prefs on the calling thread and to the snapshot. Done under the flush lock so
+     * it is ordered with flushes, and drops any pending value for the same keys so a later flush cant overwrite it
+     *
+     * @param changes values, or null to remove the key
+     * @return the result of commit(), true for apply()
+     */
+    private static boolean writeThrough(Context context, Map<String, Object> changes, boolean clear, boolean commit)
+    {
+        snapshot(context);
+        List<String> changed = new ArrayList<String>();
+        boolean committed = true;
+
+        synchronized (sFlushLock)
+        {
+            SharedPreferences.Editor editor = sSharedPreferences.edit();
+            if(clear)
+                editor.clear();
+            for(Map.Entry<String, Object> change : changes.entrySet())
+                putValue(editor, change.getKey(), null == change.getValue() ? REMOVED : change.getValue());
+
+            synchronized (sWriteLock)
+            {
+                sSnapshot = sSnapshot.with(changes, clear, changed);
+
+                if(clear)
+                {
+                    sPending.clear();
+                    sPendingClear = false;
+                }
+                else
+                {
+                    sPending.keySet().removeAll(changes.keySet());
+                }
+                if(!hasPendingLocked())
+                    sFirstPendingMs = 0;
+            }
+
+            if(commit)
+                committed = editor.commit();
+            else
+                editor.apply();
+        }
+
+        notifyListeners(changed);
+        return committed;
+    }
+
+    private static void notifyListeners(List<String> changed)
+    {
+        final List<String> keys = new ArrayList<String>();
+        final List<List<OnPrefChangedListener>> listeners = new ArrayList<List<OnPrefChangedListener>>();
+        synchronized (sListeners)
+        {
+            if(sListeners.isEmpty())
+                return;
+
+            for(String key : changed)
+            {
+                List<OnPrefChangedListener> keyListeners = sListeners.get(key);
+                if(null != keyListeners)
+                {
+                    keys.add(key);
+                    listeners.add(new ArrayList<OnPrefChangedListener>(keyListeners));
+                }
+            }
+        }
+
+        if(keys.isEmpty())
+            return;
+
+        new Handler(Looper.getMainLooper()).post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for(int i = 0; i < keys.size(); i++)
+                {
+                    for(OnPrefChangedListener listener : listeners.get(i))
+                        listener.onPrefChanged(keys.get(i));
+                }
+            }
+        });
+    }
+
+    private static boolean hasPendingLocked()
+    {
+        return sPendingClear || !sPending.isEmpty();
+    }
+
+    private static void scheduleFlushLocked(long delayMs)
+    {
+        if(sFlushScheduled && delayMs > 0)
+            return;
+
+        if(null == sFlusher)
+        {
+            sFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(@NotNull Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "AbsPrefsHelper flush");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        sFlushScheduled = true;
+        sFlusher.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                flushPending();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes everything pending with a single commit, on the calling thread. If that fails the values are put back
+     * (behind anything written since) and a retry scheduled
+     *
+     * @return false if the commit failed
+     */
+    private static boolean flushPending()
+    {
+        synchronized (sFlushLock)
+        {
+            Map<String, Object> pending;
+            boolean clear;
+            long firstPendingMs;
+
+            synchronized (sWriteLock)
+            {
+                sFlushScheduled = false;
+                if(!hasPendingLocked())
+                    return true;
+
+                pending = sPending;
+                clear = sPendingClear;
+                firstPendingMs = sFirstPendingMs;
+                sPending = new HashMap<String, Object>();
+                sPendingClear = false;
+                sFirstPendingMs = 0;
+            }
+
+            long startMs = System.currentTimeMillis();
+            boolean committed = false;
+            try
+            {
+                SharedPreferences.Editor editor = sSharedPreferences.edit();
+                if(clear)
+                    editor.clear();
+
+                for(Map.Entry<String, Object> entry : pending.entrySet())
+                    putValue(editor, entry.getKey(), entry.getValue());
+
+                committed = editor.commit();
+                if(!committed)
+                    XLog.e("flushing " + pending.size() + " prefs failed, retrying in " + FLUSH_RETRY_MS + "ms");
+            }
+            catch(RuntimeException e)
+            {
+                //would otherwise vanish into the executors future
+                XLog.e("flushing " + pending.size() + " prefs failed, retrying in " + FLUSH_RETRY_MS + "ms", e);
+            }
+
+            if(!committed)
+            {
+                restorePending(pending, clear, firstPendingMs);
+                return false;
+            }
+
+            long endMs = System.currentTimeMillis();
+            sMetrics.recordFlush(pending.size(), startMs - firstPendingMs, endMs - startMs);
+            return true;
+        }
+    }
+
+    /**
+     * Only called holding the flush lock, so no write through can have happened since the pending state was taken
+     */
+    private static void restorePending(Map<String, Object> pending, boolean clear, long firstPendingMs)
+    {
+        synchronized (sWriteLock)
+        {
+            //a clear written since makes the failed values moot
+            if(!sPendingClear)
+            {
+                for(Map.Entry<String, Object> entry : pending.entrySet())
+                {
+                    //anything written since is newer
+                    if(!sPending.containsKey(entry.getKey()))
+                        sPending.put(entry.getKey(), entry.getValue());
+                }
+                sPendingClear = clear;
+            }
+
+            if(sFirstPendingMs == 0 || firstPendingMs < sFirstPendingMs)
+                sFirstPendingMs = firstPendingMs;
+
+            scheduleFlushLocked(FLUSH_RETRY_MS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putValue(SharedPreferences.Editor editor, String key, Object value)
+    {
+        if(value == REMOVED)
+            editor.remove(key);
+        else if(value instanceof String)
+            editor.putString(key, (String) value);
+        else if(value instanceof Boolean)
+            editor.putBoolean(key, (Boolean) value);
+        else if(value instanceof Integer)
+            editor.putInt(key, (Integer) value);
+        else if(value instanceof Long)
+            editor.putLong(key, (Long) value);
+        else if(value instanceof Float)
+            editor.putFloat(key, (Float) value);
+        else if(value instanceof Set)
+            putStringSet(editor, key, (Set<String>) value);
+        else
+            throw new IllegalArgumentException("Unsupported type for " + key + ": " + value.getClass());
+    }
+
+    /**
+     * Editor.putStringSet() is API 11. Below that only an {@link AppendLogPrefs} editor, which has it on any version,
+     * can store a set. Checked when the set is put so it fails there rather than in a later flush
+     */
+    private static void checkStringSetSupported(Context context, String key)
+    {
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB && !(getDefaultSharedPreferences(context) instanceof AppendLogPrefs))
+            throw new UnsupportedOperationException("String sets need API 11 or AbsPrefsHelper.setUseLogStore(true), for " + key);
+    }
+
+    private static void putStringSet(SharedPreferences.Editor editor, String key, Set<String> value)
+    {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+            editor.putStringSet(key, value);
+        else if(editor instanceof AppendLogPrefs.LogEditor)
+            ((AppendLogPrefs.LogEditor) editor).putStringSet(key, value);
+        else
+            throw new UnsupportedOperationException("String sets need API 11 or AbsPrefsHelper.setUseLogStore(true), for " + key);
+    }
+
+    //============================================================================================================
+    // INNER CLASSES
+    //============================================================================================================
+
     public interface PrefsLoader
     {
         public void loaded(SharedPreferences prefs);
     }
+
+    public interface OnPrefChangedListener
+    {
+        /**
+         * Read the new value with the typed getters
+         */
+        public void onPrefChanged(String key);
+    }
+
+    /**
+     * Writes held by a {@link #batch(android.content.Context, Runnable)}, only touched by its thread
+     */
+    private static class Batch
+    {
+        private int mDepth;
+        private final Map<String, Object> mChanges = new HashMap<String, Object>();
+        private boolean mClear;
+    }
+
+    /**
+     * Collects changes until commit() / apply() then hands them to {@link #write(Context, Map, boolean)} or
+     * {@link #writeThrough(Context, Map, boolean, boolean)} in one go
+     */
+    private static class SnapshotEditor implements SharedPreferences.Editor
+    {
+        private final Context mContext;
+        private final boolean mCoalesce;
+        private final Map<String, Object> mModified = new HashMap<String, Object>();
+        private boolean mClear;
+
+        private SnapshotEditor(Context context, boolean coalesce)
+        {
+            mContext = context;
+            mCoalesce = coalesce;
+        }
+
+        @Override
+        public SharedPreferences.Editor putString(String key, String value)
+        {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, Set<String> values)
+        {
+            checkStringSetSupported(mContext, key);
+            return put(key, null == values ? null : Collections.unmodifiableSet(new HashSet<String>(values)));
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value)
+        {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value)
+        {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value)
+        {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value)
+        {
+            return put(key, value);
+        }
+
+        /**
+         * @param value null removes the key, as with the platform prefs
+         */
+        private synchronized SharedPreferences.Editor put(String key, Object value)
+        {
+            mModified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized SharedPreferences.Editor remove(String key)
+        {
+            mModified.put(key, null);
+            return this;
+        }
+
+        @Override
+        public synchronized SharedPreferences.Editor clear()
+        {
+            mClear = true;
+            return this;
+        }
+
+        /**
+         * When coalescing flushes everything pending, not just this editors changes, on the calling thread (inside a
+         * batch it only hands them to the batch)
+         */
+        @Override
+        public boolean commit()
+        {
+            return hand(true);
+        }
+
+        @Override
+        public void apply()
+        {
+            hand(false);
+        }
+
+        private boolean hand(boolean commit)
+        {
+            Map<String, Object> modified;
+            boolean clear;
+            synchronized (this)
+            {
+                modified = new HashMap<String, Object>(mModified);
+                clear = mClear;
+                mModified.clear();
+                mClear = false;
+            }
+
+            if(!mCoalesce)
+                return writeThrough(mContext, modified, clear, commit);
+
+            if(clear || !modified.isEmpty())
+                write(mContext, modified, clear);
+            return !commit || null != sBatch.get() || flushPending();
+        }
+    }
 }
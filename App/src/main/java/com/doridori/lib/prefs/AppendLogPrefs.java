@@ -0,0 +1,900 @@
+package com.doridori.lib.prefs;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.doridori.lib.util.XLog;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * {@link SharedPreferences} kept in an append only log file rather than an XML file. An edit appends just the changed
+ * keys (and fsyncs), so a write costs O(change) instead of rewriting every key, and loading is a single mmap of the
+ * file rather than an XML parse. Once the log holds more than twice as many records as there are keys it is compacted
+ * (rewritten with one record per key and renamed over the old one) on the writer thread.
+ *
+ * The first time a log is opened any existing XML prefs of the same name are migrated into it, on the background load
+ * thread, and the XML cleared. As with the platform prefs, reads block until the load (and migration) is done.
+ *
+ * File format:
+ * <pre>
+ * file   = "PLOG" version(byte) record*
+ * record = length(int) crc32(int) payload       length and crc are of the payload
+ * payload = PUT key type value | REMOVE key | CLEAR
+ * </pre>
+ * A record torn by a crash mid write fails its crc, so it and anything after it are dropped on load. A file that can
+ * not be read at all (wrong header or version, or a good crc on a record this version does not understand) is never
+ * rewritten, it is renamed to name.plog.corrupt-time and a new log started with whatever was read before the problem.
+ *
+ * Use through {@link AbsPrefsHelper#setUseLogStore(boolean)} or {@link #open(Context, String)}.
+ *
+ * @author dorian cussen
+ */
+public class AppendLogPrefs implements SharedPreferences
+{
+    //============================================================================================================
+    // FORMAT
+    //============================================================================================================
+
+    static final int VERSION = 1;
+    static final byte[] HEADER = {'P', 'L', 'O', 'G', VERSION};
+    static final String EXTENSION = ".plog";
+
+    static final int OP_PUT = 1;
+    static final int OP_REMOVE = 2;
+    static final int OP_CLEAR = 3;
+
+    static final int TYPE_STRING = 1;
+    static final int TYPE_BOOLEAN = 2;
+    static final int TYPE_INT = 3;
+    static final int TYPE_LONG = 4;
+    static final int TYPE_FLOAT = 5;
+    static final int TYPE_STRING_SET = 6;
+
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    /**
+     * Logs smaller than this are never compacted
+     */
+    public static final long DEFAULT_MIN_COMPACT_BYTES = 32 * 1024;
+
+    private static final Object LISTENER_PRESENT = new Object();
+    private static final Object REMOVED = new Object();
+
+    private final File mFile;
+    private final SharedPreferences mLegacyPrefs;
+    private final File mLegacyFile;
+    private final ExecutorService mWriter;
+
+    //guarded by mLock
+    private final Object mLock = new Object();
+    private final Map<String, Object> mMap = new HashMap<String, Object>();
+    private final WeakHashMap<OnSharedPreferenceChangeListener, Object> mListeners = new WeakHashMap<OnSharedPreferenceChangeListener, Object>();
+    private boolean mLoaded;
+
+    //writer thread only
+    private FileOutputStream mOut;
+    private long mFileBytes;
+    private int mRecordCount;
+    private long mMinCompactBytes = DEFAULT_MIN_COMPACT_BYTES;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * Opens (or creates) filesDir/name.plog, migrating the XML prefs called name if there is no log yet. Returns
+     * straight away, loading on a background thread. Keep the instance, opening the same file twice is not supported
+     */
+    public static AppendLogPrefs open(@NotNull Context context, @NotNull String name)
+    {
+        File legacyFile = new File(new File(context.getApplicationInfo().dataDir, "shared_prefs"), name + ".xml");
+        return new AppendLogPrefs(new File(context.getFilesDir(), name + EXTENSION), context.getSharedPreferences(name, Context.MODE_PRIVATE), legacyFile);
+    }
+
+    /**
+     * @param legacyPrefs migrated if the log does not exist and legacyFile does, can be null
+     */
+    AppendLogPrefs(@NotNull File file, @Nullable SharedPreferences legacyPrefs, @Nullable File legacyFile)
+    {
+        mFile = file;
+        mLegacyPrefs = legacyPrefs;
+        mLegacyFile = legacyFile;
+        mWriter = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(@NotNull Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "AppendLogPrefs " + mFile.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        //everything else is queued behind this on the same thread, so no write can run before the load
+        mWriter.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                load();
+            }
+        });
+    }
+
+    //============================================================================================================
+    // READS
+    //============================================================================================================
+
+    @Override
+    public Map<String, ?> getAll()
+    {
+        synchronized (mLock)
+        {
+            awaitLoadedLocked();
+            return new HashMap<String, Object>(mMap);
+        }
+    }
+
+    @Override
+    public String getString(String key, String defValue)
+    {
+        Object value = get(key);
+        return null == value ? defValue : (String) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues)
+    {
+        Object value = get(key);
+        return null == value ? defValues : (Set<String>) value;
+    }
+
+    @Override
+    public int getInt(String key, int defValue)
+    {
+        Object value = get(key);
+        return null == value ? defValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(String key, long defValue)
+    {
+        Object value = get(key);
+        return null == value ? defValue : (Long) value;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue)
+    {
+        Object value = get(key);
+        return null == value ? defValue : (Float) value;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue)
+    {
+        Object value = get(key);
+        return null == value ? defValue : (Boolean) value;
+    }
+
+    @Override
+    public boolean contains(String key)
+    {
+        synchronized (mLock)
+        {
+            awaitLoadedLocked();
+            return mMap.containsKey(key);
+        }
+    }
+
+    private Object get(String key)
+    {
+        synchronized (mLock)
+        {
+            awaitLoadedLocked();
+            return mMap.get(key);
+        }
+    }
+
+    public boolean isLoaded()
+    {
+        synchronized (mLock)
+        {
+            return mLoaded;
+        }
+    }
+
+    private void awaitLoadedLocked()
+    {
+        boolean interrupted = false;
+        while (!mLoaded)
+        {
+            try
+            {
+                mLock.wait();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    //============================================================================================================
+    // WRITES
+    //============================================================================================================
+
+    @Override
+    public Editor edit()
+    {
+        return new LogEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+    {
+        synchronized (mLock)
+        {
+            mListeners.put(listener, LISTENER_PRESENT);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+    {
+        synchronized (mLock)
+        {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * @param minCompactBytes logs smaller than this are never compacted
+     */
+    public void setMinCompactBytes(final long minCompactBytes)
+    {
+        mWriter.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mMinCompactBytes = minCompactBytes;
+            }
+        });
+    }
+
+    /**
+     * Applies the edit to memory and queues its records to be appended
+     *
+     * @return the queued write
+     */
+    private Future<Boolean> commitToMemory(Map<String, Object> modified, boolean clear)
+    {
+        final List<String> changedKeys = new ArrayList<String>();
+        final List<OnSharedPreferenceChangeListener> listeners;
+        final byte[] records;
+
+        synchronized (mLock)
+        {
+            awaitLoadedLocked();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int recordCount = 0;
+
+            try
+            {
+                if (clear && !mMap.isEmpty())
+                {
+                    changedKeys.addAll(mMap.keySet());
+                    mMap.clear();
+                    writeRecord(out, OP_CLEAR, null, null);
+                    recordCount++;
+                }
+
+                for (Map.Entry<String, Object> entry : modified.entrySet())
+                {
+                    String key = entry.getKey();
+                    Object value = entry.getValue();
+
+                    if (value == REMOVED)
+                    {
+                        if (!mMap.containsKey(key))
+                            continue;
+
+                        mMap.remove(key);
+                        writeRecord(out, OP_REMOVE, key, null);
+                    }
+                    else
+                    {
+                        if (value.equals(mMap.get(key)))
+                            continue;
+
+                        mMap.put(key, value);
+                        writeRecord(out, OP_PUT, key, value);
+                    }
+
+                    if (!changedKeys.contains(key))
+                        changedKeys.add(key);
+                    recordCount++;
+                }
+            }
+            catch (IOException e)
+            {
+                //writing to memory
+                throw new IllegalStateException(e);
+            }
+
+            records = bytes.toByteArray();
+            listeners = new ArrayList<OnSharedPreferenceChangeListener>(mListeners.keySet());
+
+            final int queuedRecordCount = recordCount;
+            Future<Boolean> write = mWriter.submit(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call()
+                {
+                    return append(records, queuedRecordCount);
+                }
+            });
+
+            notifyListeners(listeners, changedKeys);
+            return write;
+        }
+    }
+
+    private void notifyListeners(final List<OnSharedPreferenceChangeListener> listeners, final List<String> changedKeys)
+    {
+        if (listeners.isEmpty() || changedKeys.isEmpty())
+            return;
+
+        //same as the platform prefs, listeners are called on the main thread
+        new Handler(Looper.getMainLooper()).post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (String key : changedKeys)
+                {
+                    for (OnSharedPreferenceChangeListener listener : listeners)
+                        listener.onSharedPreferenceChanged(AppendLogPrefs.this, key);
+                }
+            }
+        });
+    }
+
+    //============================================================================================================
+    // FILE (writer thread)
+    //============================================================================================================
+
+    private void load()
+    {
+        long start = System.nanoTime();
+        Map<String, Object> loaded = new HashMap<String, Object>();
+
+        try
+        {
+            if (mFile.exists())
+            {
+                replay(loaded);
+                mOut = new FileOutputStream(mFile, true);
+            }
+            else
+            {
+                if (null != mLegacyPrefs && null != mLegacyFile && mLegacyFile.exists())
+                    migrate(loaded);
+
+                writeSnapshot(loaded);
+            }
+
+            deleteLegacy();
+            XLog.i("loaded {} keys from {} in {}ms", loaded.size(), mFile.getName(), (System.nanoTime() - start) / 1000000);
+        }
+        catch (IOException e)
+        {
+            XLog.e("Could not load " + mFile, e);
+            recoverUnreadable(loaded);
+        }
+
+        synchronized (mLock)
+        {
+            mMap.putAll(loaded);
+            mLoaded = true;
+            mLock.notifyAll();
+        }
+
+        compactIfNeeded();
+    }
+
+    /**
+     * Keeps the unreadable file for a later version (or a person) to look at and starts a new log with what was read.
+     * If it cant be moved nothing is written, edits stay in memory and commit() returns false
+     */
+    private void recoverUnreadable(Map<String, Object> loaded)
+    {
+        if (mFile.exists())
+        {
+            File aside = new File(mFile.getPath() + ".corrupt-" + System.currentTimeMillis());
+            if (!mFile.renameTo(aside))
+            {
+                XLog.e("Could not move " + mFile + " aside, not writing to it until restarted");
+                return;
+            }
+            XLog.e("moved unreadable " + mFile.getName() + " to " + aside.getName() + ", starting again with the " + loaded.size() + " keys read");
+        }
+
+        try
+        {
+            writeSnapshot(loaded);
+        }
+        catch (IOException e)
+        {
+            XLog.e("Could not recreate " + mFile, e);
+        }
+    }
+
+    /**
+     * Reads the log through a read only mmap, truncating a torn tail after the last good record. Throws without
+     * changing the file if it is not a log this version can read
+     */
+    private void replay(Map<String, Object> map) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int validBytes = 0;
+            if (size >= HEADER.length)
+            {
+                byte[] header = new byte[HEADER.length];
+                buffer.get(header);
+                for (int i = 0; i < HEADER.length; i++)
+                {
+                    if (header[i] != HEADER[i])
+                        throw new IOException(mFile + " is not a prefs log or is an unsupported version");
+                }
+                validBytes = HEADER.length;
+            }
+
+            CRC32 crc = new CRC32();
+            int records = 0;
+            while (buffer.remaining() > 0)
+            {
+                try
+                {
+                    int length = buffer.getInt();
+                    int expectedCrc = buffer.getInt();
+                    if (length < 1 || length > buffer.remaining())
+                        break;
+
+                    byte[] payload = new byte[length];
+                    buffer.get(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != expectedCrc)
+                        break;
+
+                    readRecord(payload, map);
+                }
+                catch (BufferUnderflowException e)
+                {
+                    break;
+                }
+
+                validBytes = buffer.position();
+                records++;
+            }
+
+            if (validBytes < size)
+            {
+                XLog.w("dropping " + (size - validBytes) + " bytes of torn or corrupt records from " + mFile.getName());
+                file.setLength(validBytes);
+            }
+            if (validBytes == 0)
+            {
+                file.write(HEADER);
+                validBytes = HEADER.length;
+            }
+
+            mFileBytes = validBytes;
+            mRecordCount = records;
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    private void migrate(Map<String, Object> map)
+    {
+        for (Map.Entry<String, ?> entry : mLegacyPrefs.getAll().entrySet())
+        {
+            if (null != entry.getValue())
+                map.put(entry.getKey(), entry.getValue());
+        }
+
+        //only deleted once the snapshot is safely written, see load()
+        XLog.i("migrating {} keys from {}", map.size(), mLegacyFile.getName());
+    }
+
+    /**
+     * Writes map as a fresh log (via a temp file and rename) and opens it for appending
+     */
+    private void writeSnapshot(Map<String, Object> map) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(HEADER);
+        for (Map.Entry<String, Object> entry : map.entrySet())
+            writeRecord(out, OP_PUT, entry.getKey(), entry.getValue());
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream tempOut = new FileOutputStream(temp);
+        try
+        {
+            bytes.writeTo(tempOut);
+            tempOut.getFD().sync();
+        }
+        finally
+        {
+            tempOut.close();
+        }
+
+        //the old log stays open until the new one is in place, so a failed rename leaves us appending to it as before
+        if (!temp.renameTo(mFile))
+        {
+            temp.delete();
+            throw new IOException("Could not rename " + temp + " to " + mFile);
+        }
+
+        FileOutputStream old = mOut;
+        //the old stream now points at the replaced file, appends to it would be lost
+        mOut = null;
+        try
+        {
+            mOut = new FileOutputStream(mFile, true);
+        }
+        finally
+        {
+            if (null != old)
+                old.close();
+        }
+        mFileBytes = bytes.size();
+        mRecordCount = map.size();
+    }
+
+    /**
+     * Also run when the log already exists, in case the app died between writing the log and deleting the XML
+     */
+    private void deleteLegacy()
+    {
+        if (null == mLegacyFile || !mLegacyFile.exists())
+            return;
+
+        mLegacyPrefs.edit().clear().commit();
+        mLegacyFile.delete();
+    }
+
+    private boolean append(byte[] records, int recordCount)
+    {
+        if (records.length == 0)
+            return true;
+        if (null == mOut)
+            return false;
+
+        try
+        {
+            mOut.write(records);
+            mOut.getFD().sync();
+            mFileBytes += records.length;
+            mRecordCount += recordCount;
+        }
+        catch (IOException e)
+        {
+            XLog.e("Could not write " + mFile, e);
+            return false;
+        }
+
+        compactIfNeeded();
+        return true;
+    }
+
+    private void compactIfNeeded()
+    {
+        Map<String, Object> snapshot;
+        synchronized (mLock)
+        {
+            if (mFileBytes < mMinCompactBytes || mRecordCount <= 2 * mMap.size())
+                return;
+
+            snapshot = new HashMap<String, Object>(mMap);
+        }
+
+        long start = System.nanoTime();
+        long before = mFileBytes;
+        try
+        {
+            writeSnapshot(snapshot);
+            XLog.i("compacted {} from {} to {} bytes in {}ms", mFile.getName(), before, mFileBytes, (System.nanoTime() - start) / 1000000);
+        }
+        catch (IOException e)
+        {
+            XLog.e("Could not compact " + mFile, e);
+        }
+    }
+
+    //============================================================================================================
+    // ENCODING
+    //============================================================================================================
+
+    /**
+     * Writes length, crc and payload
+     */
+    private static void writeRecord(DataOutputStream out, int op, String key, Object value) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeByte(op);
+        if (op != OP_CLEAR)
+            writeString(payload, key);
+
+        if (op == OP_PUT)
+        {
+            if (value instanceof String)
+            {
+                payload.writeByte(TYPE_STRING);
+                writeString(payload, (String) value);
+            }
+            else if (value instanceof Boolean)
+            {
+                payload.writeByte(TYPE_BOOLEAN);
+                payload.writeBoolean((Boolean) value);
+            }
+            else if (value instanceof Integer)
+            {
+                payload.writeByte(TYPE_INT);
+                payload.writeInt((Integer) value);
+            }
+            else if (value instanceof Long)
+            {
+                payload.writeByte(TYPE_LONG);
+                payload.writeLong((Long) value);
+            }
+            else if (value instanceof Float)
+            {
+                payload.writeByte(TYPE_FLOAT);
+                payload.writeFloat((Float) value);
+            }
+            else if (value instanceof Set)
+            {
+                Set<?> set = (Set<?>) value;
+                payload.writeByte(TYPE_STRING_SET);
+                payload.writeInt(set.size());
+                for (Object item : set)
+                    writeString(payload, (String) item);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unsupported pref type " + value.getClass());
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        out.writeInt(bytes.size());
+        out.writeInt((int) crc.getValue());
+        bytes.writeTo(out);
+    }
+
+    private static void readRecord(byte[] payload, Map<String, Object> map) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int op = in.readUnsignedByte();
+        switch (op)
+        {
+            case OP_CLEAR:
+                map.clear();
+                return;
+
+            case OP_REMOVE:
+                map.remove(readString(in));
+                return;
+
+            case OP_PUT:
+                String key = readString(in);
+                int type = in.readUnsignedByte();
+                switch (type)
+                {
+                    case TYPE_STRING:
+                        map.put(key, readString(in));
+                        return;
+                    case TYPE_BOOLEAN:
+                        map.put(key, in.readBoolean());
+                        return;
+                    case TYPE_INT:
+                        map.put(key, in.readInt());
+                        return;
+                    case TYPE_LONG:
+                        map.put(key, in.readLong());
+                        return;
+                    case TYPE_FLOAT:
+                        map.put(key, in.readFloat());
+                        return;
+                    case TYPE_STRING_SET:
+                        int size = in.readInt();
+                        Set<String> set = new HashSet<String>(size * 2);
+                        for (int i = 0; i < size; i++)
+                            set.add(readString(in));
+                        map.put(key, Collections.unmodifiableSet(set));
+                        return;
+                    default:
+                        throw new IOException("Unknown pref type " + type);
+                }
+
+            default:
+                throw new IOException("Unknown record op " + op);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    //============================================================================================================
+    // EDITOR
+    //============================================================================================================
+
+    /**
+     * Package private so {@link AbsPrefsHelper} can call putStringSet() on it directly below API 11
+     */
+    class LogEditor implements Editor
+    {
+        private final Map<String, Object> mModified = new HashMap<String, Object>();
+        private boolean mClear;
+
+        @Override
+        public Editor putString(String key, String value)
+        {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values)
+        {
+            return put(key, null == values ? null : Collections.unmodifiableSet(new HashSet<String>(values)));
+        }
+
+        @Override
+        public Editor putInt(String key, int value)
+        {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value)
+        {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value)
+        {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value)
+        {
+            return put(key, value);
+        }
+
+        /**
+         * @param value null removes the key, as with the platform prefs
+         */
+        private synchronized Editor put(String key, Object value)
+        {
+            mModified.put(key, null == value ? REMOVED : value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor remove(String key)
+        {
+            mModified.put(key, REMOVED);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear()
+        {
+            mClear = true;
+            return this;
+        }
+
+        /**
+         * Blocks until the records are on disk
+         */
+        @Override
+        public boolean commit()
+        {
+            try
+            {
+                return commitToMemory().get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            catch (ExecutionException e)
+            {
+                XLog.e("Could not commit", e);
+                return false;
+            }
+        }
+
+        @Override
+        public void apply()
+        {
+            commitToMemory();
+        }
+
+        private synchronized Future<Boolean> commitToMemory()
+        {
+            Future<Boolean> write = AppendLogPrefs.this.commitToMemory(new HashMap<String, Object>(mModified), mClear);
+            mModified.clear();
+            mClear = false;
+            return write;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.doridori.lib.prefs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How well {@link AbsPrefsHelper} is coalescing writes. puts / flushes is the coalescing ratio (how many changes each
+ * file write carried), flush delay is how long a change waited in memory before its flush started and flush time is
+ * how long the write itself took. Main thread blocks are reads on the main thread that had to wait for the prefs to
+ * load.
+ *
+ * @author dorian cussen
+ */
+public class PrefsMetrics
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    private final AtomicLong mPuts = new AtomicLong();
+    private final AtomicLong mFlushes = new AtomicLong();
+    private final AtomicLong mKeysWritten = new AtomicLong();
+    private final AtomicLong mFlushDelayTotalMs = new AtomicLong();
+    private final AtomicLong mFlushDelayMaxMs = new AtomicLong();
+    private final AtomicLong mFlushTotalMs = new AtomicLong();
+    private final AtomicLong mFlushMaxMs = new AtomicLong();
+    private final AtomicLong mMainThreadBlocks = new AtomicLong();
+    private final AtomicLong mMainThreadBlockedTotalMs = new AtomicLong();
+    private final AtomicLong mMainThreadBlockedMaxMs = new AtomicLong();
+
+    //============================================================================================================
+    // RECORDING
+    //============================================================================================================
+
+    void recordPuts(int count)
+    {
+        mPuts.addAndGet(count);
+    }
+
+    void recordFlush(int keys, long delayMs, long flushMs)
+    {
+        mFlushes.incrementAndGet();
+        mKeysWritten.addAndGet(keys);
+        mFlushDelayTotalMs.addAndGet(delayMs);
+        mFlushTotalMs.addAndGet(flushMs);
+        max(mFlushDelayMaxMs, delayMs);
+        max(mFlushMaxMs, flushMs);
+    }
+
+    void recordMainThreadBlock(long blockedMs)
+    {
+        mMainThreadBlocks.incrementAndGet();
+        mMainThreadBlockedTotalMs.addAndGet(blockedMs);
+        max(mMainThreadBlockedMaxMs, blockedMs);
+    }
+
+    private static void max(AtomicLong max, long value)
+    {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value))
+        {
+            //retry
+        }
+    }
+
+    public void reset()
+    {
+        mPuts.set(0);
+        mFlushes.set(0);
+        mKeysWritten.set(0);
+        mFlushDelayTotalMs.set(0);
+        mFlushDelayMaxMs.set(0);
+        mFlushTotalMs.set(0);
+        mFlushMaxMs.set(0);
+        mMainThreadBlocks.set(0);
+        mMainThreadBlockedTotalMs.set(0);
+        mMainThreadBlockedMaxMs.set(0);
+    }
+
+    //============================================================================================================
+    // GETTERS
+    //============================================================================================================
+
+    /**
+     * @return every put / remove, including ones later overwritten before being flushed
+     */
+    public long getPutCount()
+    {
+        return mPuts.get();
+    }
+
+    public long getFlushCount()
+    {
+        return mFlushes.get();
+    }
+
+    /**
+     * @return keys actually written, after coalescing
+     */
+    public long getKeysWrittenCount()
+    {
+        return mKeysWritten.get();
+    }
+
+    /**
+     * @return puts per flush, 0 if nothing has been flushed
+     */
+    public double getCoalescingRatio()
+    {
+        long flushes = mFlushes.get();
+        return flushes == 0 ? 0 : (double) mPuts.get() / flushes;
+    }
+
+    public long getMeanFlushDelayMs()
+    {
+        long flushes = mFlushes.get();
+        return flushes == 0 ? 0 : mFlushDelayTotalMs.get() / flushes;
+    }
+
+    public long getMaxFlushDelayMs()
+    {
+        return mFlushDelayMaxMs.get();
+    }
+
+    public long getMeanFlushMs()
+    {
+        long flushes = mFlushes.get();
+        return flushes == 0 ? 0 : mFlushTotalMs.get() / flushes;
+    }
+
+    public long getMaxFlushMs()
+    {
+        return mFlushMaxMs.get();
+    }
+
+    /**
+     * @return main thread reads that had to wait for the prefs to load, ideally 0
+     */
+    public long getMainThreadBlockCount()
+    {
+        return mMainThreadBlocks.get();
+    }
+
+    public long getMainThreadBlockedTotalMs()
+    {
+        return mMainThreadBlockedTotalMs.get();
+    }
+
+    public long getMainThreadBlockedMaxMs()
+    {
+        return mMainThreadBlockedMaxMs.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "puts=" + getPutCount() +
+                " flushes=" + getFlushCount() +
+                " keysWritten=" + getKeysWrittenCount() +
+                " ratio=" + String.format("%.1f", getCoalescingRatio()) +
+                " delayMean=" + getMeanFlushDelayMs() +
+                " delayMax=" + getMaxFlushDelayMs() +
+                " flushMean=" + getMeanFlushMs() +
+                " flushMax=" + getMaxFlushMs() +
+                " mainThreadBlocks=" + getMainThreadBlockCount() +
+                " mainThreadBlockedMax=" + getMainThreadBlockedMaxMs();
+    }
+}
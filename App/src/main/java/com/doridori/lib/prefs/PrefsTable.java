@@ -0,0 +1,390 @@
+package com.doridori.lib.prefs;
+
+import android.util.Base64;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable in memory copy of the prefs used by {@link AbsPrefsHelper}. An open addressed hash table over parallel
+ * arrays: numbers and booleans live unboxed in a long[] (floats and doubles as their bits), Strings, byte[]s and
+ * String sets in an Object[]. Writes build a new table with {@link #with(Map, boolean, List)}.
+ *
+ * The backing prefs have no double or byte[] type, so doubles and byte[]s are stored there as Strings tagged with
+ * {@link #DOUBLE_TAG} / {@link #BYTES_TAG} (the double as Double.toString(), the byte[] as Base64). {@link #from(Map)}
+ * decodes them again, so after a reload they have the same type (and compare equal to) what was written, and the typed
+ * getters throw ClassCastException for the wrong type just as the platform prefs do.
+ *
+ * @author dorian cussen
+ */
+final class PrefsTable
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    static final byte STRING = 1;
+    static final byte BOOLEAN = 2;
+    static final byte INT = 3;
+    static final byte LONG = 4;
+    static final byte FLOAT = 5;
+    static final byte DOUBLE = 6;
+    static final byte BYTES = 7;
+    static final byte STRING_SET = 8;
+
+    /**
+     * Prefixes of the tagged Strings doubles and byte[]s are stored as. Starts with a NUL so no ordinary String clashes
+     */
+    static final String DOUBLE_TAG = "\u0000double:";
+    static final String BYTES_TAG = "\u0000bytes:";
+
+    static final PrefsTable EMPTY = new PrefsTable(0);
+
+    private final String[] mKeys;
+    private final byte[] mTypes;
+    private final long[] mPrims;
+    private final Object[] mObjects;
+    private final int mMask;
+    private int mSize;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    private PrefsTable(int size)
+    {
+        //at most half full
+        int capacity = Integer.highestOneBit(Math.max(size, 4) * 2 - 1) << 1;
+        mKeys = new String[capacity];
+        mTypes = new byte[capacity];
+        mPrims = new long[capacity];
+        mObjects = new Object[capacity];
+        mMask = capacity - 1;
+    }
+
+    /**
+     * @param values as returned by SharedPreferences.getAll()
+     */
+    static PrefsTable from(Map<String, ?> values)
+    {
+        PrefsTable table = new PrefsTable(values.size());
+        for(Map.Entry<String, ?> entry : values.entrySet())
+        {
+            if(null != entry.getValue())
+                table.set(entry.getKey(), decode(entry.getValue()));
+        }
+        return table;
+    }
+
+    //============================================================================================================
+    // READS
+    //============================================================================================================
+
+    int size()
+    {
+        return mSize;
+    }
+
+    boolean contains(String key)
+    {
+        return mKeys[find(key)] != null;
+    }
+
+    String getString(String key, String defValue)
+    {
+        int slot = find(key);
+        return mKeys[slot] == null ? defValue : (String) object(slot, STRING);
+    }
+
+    boolean getBoolean(String key, boolean defValue)
+    {
+        int slot = find(key);
+        return mKeys[slot] == null ? defValue : prim(slot, BOOLEAN) != 0;
+    }
+
+    int getInt(String key, int defValue)
+    {
+        int slot = find(key);
+        return mKeys[slot] == null ? defValue : (int) prim(slot, INT);
+    }
+
+    long getLong(String key, long defValue)
+    {
+        int slot = find(key);
+        return mKeys[slot] == null ? defValue : prim(slot, LONG);
+    }
+
+    float getFloat(String key, float defValue)
+    {
+        int slot = find(key);
+        return mKeys[slot] == null ? defValue : Float.intBitsToFloat((int) prim(slot, FLOAT));
+    }
+
+    double getDouble(String key, double defValue)
+    {
+        int slot = find(key);
+        return mKeys[slot] == null ? defValue : Double.longBitsToDouble(prim(slot, DOUBLE));
+    }
+
+    /**
+     * @return a copy, or null if not set
+     */
+    byte[] getBytes(String key)
+    {
+        int slot = find(key);
+        return mKeys[slot] == null ? null : ((byte[]) object(slot, BYTES)).clone();
+    }
+
+    @SuppressWarnings("unchecked")
+    Set<String> getStringSet(String key, Set<String> defValues)
+    {
+        int slot = find(key);
+        return mKeys[slot] == null ? defValues : (Set<String>) object(slot, STRING_SET);
+    }
+
+    //============================================================================================================
+    // WRITES
+    //============================================================================================================
+
+    /**
+     * @param changes values, or null to remove the key
+     * @param clear   drop everything in this table before applying the changes
+     * @param changed filled with the keys whose value is different in the returned table
+     * @return this if nothing changed
+     */
+    PrefsTable with(Map<String, Object> changes, boolean clear, List<String> changed)
+    {
+        PrefsTable next = new PrefsTable(mSize + changes.size());
+
+        if(!clear)
+            copyInto(next, changes.keySet());
+
+        for(Map.Entry<String, Object> change : changes.entrySet())
+        {
+            String key = change.getKey();
+            Object value = change.getValue();
+            if(null != value)
+                next.set(key, value);
+
+            if(!sameValue(this, next, key))
+                changed.add(key);
+        }
+
+        if(clear)
+        {
+            for(String key : mKeys)
+            {
+                if(null != key && !changes.containsKey(key))
+                    changed.add(key);
+            }
+        }
+
+        return changed.isEmpty() ? this : next;
+    }
+
+    /**
+     * @return the value boxed as it would be written to the backing prefs, null if not set
+     */
+    Object toPrefsValue(String key)
+    {
+        int slot = find(key);
+        if(mKeys[slot] == null)
+            return null;
+
+        long prim = mPrims[slot];
+        switch(mTypes[slot])
+        {
+            case BOOLEAN:
+                return prim != 0;
+            case INT:
+                return (int) prim;
+            case LONG:
+                return prim;
+            case DOUBLE:
+                return DOUBLE_TAG + Double.toString(Double.longBitsToDouble(prim));
+            case FLOAT:
+                return Float.intBitsToFloat((int) prim);
+            case BYTES:
+                return BYTES_TAG + Base64.encodeToString((byte[]) mObjects[slot], Base64.NO_WRAP);
+            default:
+                return mObjects[slot];
+        }
+    }
+
+    //============================================================================================================
+    // INTERNAL
+    //============================================================================================================
+
+    private void copyInto(PrefsTable next, Collection<String> skip)
+    {
+        for(int i = 0; i < mKeys.length; i++)
+        {
+            if(null == mKeys[i] || skip.contains(mKeys[i]))
+                continue;
+
+            int slot = next.find(mKeys[i]);
+            next.mKeys[slot] = mKeys[i];
+            next.mTypes[slot] = mTypes[i];
+            next.mPrims[slot] = mPrims[i];
+            next.mObjects[slot] = mObjects[i];
+            next.mSize++;
+        }
+    }
+
+    /**
+     * @return a double or byte[] for a tagged String from the backing prefs, otherwise the value as is
+     */
+    private static Object decode(Object value)
+    {
+        if(!(value instanceof String) || !((String) value).startsWith("\u0000"))
+            return value;
+
+        String string = (String) value;
+        try
+        {
+            if(string.startsWith(DOUBLE_TAG))
+                return Double.parseDouble(string.substring(DOUBLE_TAG.length()));
+            if(string.startsWith(BYTES_TAG))
+                return Base64.decode(string.substring(BYTES_TAG.length()), Base64.NO_WRAP);
+        }
+        catch(IllegalArgumentException e)
+        {
+            //not one of ours after all, NumberFormatException included
+        }
+        return value;
+    }
+
+    /**
+     * Only used while building, a table is not changed once it has been handed out
+     */
+    private void set(String key, Object value)
+    {
+        int slot = find(key);
+        if(mKeys[slot] == null)
+        {
+            mKeys[slot] = key;
+            mSize++;
+        }
+        mObjects[slot] = null;
+        mPrims[slot] = 0;
+
+        if(value instanceof String)
+        {
+            mTypes[slot] = STRING;
+            mObjects[slot] = value;
+        }
+        else if(value instanceof Boolean)
+        {
+            mTypes[slot] = BOOLEAN;
+            mPrims[slot] = (Boolean) value ? 1 : 0;
+        }
+        else if(value instanceof Integer)
+        {
+            mTypes[slot] = INT;
+            mPrims[slot] = (Integer) value;
+        }
+        else if(value instanceof Long)
+        {
+            mTypes[slot] = LONG;
+            mPrims[slot] = (Long) value;
+        }
+        else if(value instanceof Float)
+        {
+            mTypes[slot] = FLOAT;
+            mPrims[slot] = Float.floatToRawIntBits((Float) value);
+        }
+        else if(value instanceof Double)
+        {
+            mTypes[slot] = DOUBLE;
+            mPrims[slot] = Double.doubleToRawLongBits((Double) value);
+        }
+        else if(value instanceof byte[])
+        {
+            mTypes[slot] = BYTES;
+            mObjects[slot] = value;
+        }
+        else if(value instanceof Set)
+        {
+            mTypes[slot] = STRING_SET;
+            mObjects[slot] = value;
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unsupported type for " + key + ": " + value.getClass());
+        }
+    }
+
+    /**
+     * @return the keys slot, or the empty slot it would go in
+     */
+    private int find(String key)
+    {
+        int h = key.hashCode();
+        int slot = (h ^ (h >>> 16)) & mMask;
+        while(true)
+        {
+            String k = mKeys[slot];
+            if(k == null || k.equals(key))
+                return slot;
+            slot = (slot + 1) & mMask;
+        }
+    }
+
+    private long prim(int slot, byte type)
+    {
+        if(mTypes[slot] != type)
+            throw new ClassCastException(mKeys[slot] + " is not a " + typeName(type));
+        return mPrims[slot];
+    }
+
+    private Object object(int slot, byte type)
+    {
+        if(mTypes[slot] != type)
+            throw new ClassCastException(mKeys[slot] + " is not a " + typeName(type));
+        return mObjects[slot];
+    }
+
+    private static boolean sameValue(PrefsTable a, PrefsTable b, String key)
+    {
+        int slotA = a.find(key);
+        int slotB = b.find(key);
+        if(a.mKeys[slotA] == null || b.mKeys[slotB] == null)
+            return a.mKeys[slotA] == b.mKeys[slotB];
+
+        if(a.mTypes[slotA] != b.mTypes[slotB] || a.mPrims[slotA] != b.mPrims[slotB])
+            return false;
+
+        Object objectA = a.mObjects[slotA];
+        Object objectB = b.mObjects[slotB];
+        if(objectA instanceof byte[] && objectB instanceof byte[])
+            return Arrays.equals((byte[]) objectA, (byte[]) objectB);
+
+        return objectA == null ? objectB == null : objectA.equals(objectB);
+    }
+
+    private static String typeName(byte type)
+    {
+        switch(type)
+        {
+            case STRING:
+                return "String";
+            case BOOLEAN:
+                return "boolean";
+            case INT:
+                return "int";
+            case LONG:
+                return "long";
+            case FLOAT:
+                return "float";
+            case DOUBLE:
+                return "double";
+            case BYTES:
+                return "byte[]";
+            default:
+                return "String set";
+        }
+    }
+}
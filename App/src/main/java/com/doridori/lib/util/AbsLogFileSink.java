@@ -0,0 +1,550 @@
+package com.doridori.lib.util;
+
+import android.os.Process;
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base for XLog sinks that write to files off the calling thread, see {@link XLogFileSink} and {@link XLogBinarySink}.
+ *
+ * Log calls only claim a slot in a fixed size ring buffer (a CAS plus a few field writes - no locks) and return. One
+ * background thread drains the ring in batches, passing each {@link Entry} to {@link #writeEntry(Entry)} which encodes
+ * it into a buffered FileChannel. If the writer falls behind and the ring fills, calls are dropped according to the
+ * {@link DropPolicy} and counted - the writer then records how many were lost so gaps in the file are visible.
+ *
+ * Files are named baseName + extension, with older ones rotated to baseName.1 + extension etc. once the current file
+ * is bigger than maxFileBytes or older than maxFileAgeMs. Rotation only happens between entries.
+ *
+ * @author dorian cussen
+ */
+public abstract class AbsLogFileSink
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    public enum DropPolicy
+    {
+        /**
+         * Drop whatever is logged while the ring is full
+         */
+        DROP_ANY,
+        /**
+         * Once the ring is 3/4 full drop verbose, debug and info so the remaining space is kept for warnings and errors
+         */
+        DROP_LOW_PRIORITY_FIRST
+    }
+
+    private static final String TAG = AbsLogFileSink.class.getSimpleName();
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    private final File mDir;
+    private final String mBaseName;
+    private final String mExtension;
+
+    private final int mCapacity;
+    private final int mMask;
+    private final Entry[] mEntries;
+    /**
+     * Per slot sequence. Equal to the slots index when free for that lap, index + 1 once written and ready to drain
+     */
+    private final AtomicLongArray mSequences;
+    private final AtomicLong mTail = new AtomicLong();
+    /**
+     * Only written by the writer thread
+     */
+    private final AtomicLong mHead = new AtomicLong();
+
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mWrittenCount = new AtomicLong();
+
+    private volatile long mMaxFileBytes = 1024 * 1024;
+    private volatile long mMaxFileAgeMs = TimeUnit.DAYS.toMillis(1);
+    private volatile int mMaxFiles = 5;
+    private volatile long mFlushIntervalMs = 500;
+    private volatile DropPolicy mDropPolicy = DropPolicy.DROP_LOW_PRIORITY_FIRST;
+
+    private volatile boolean mRunning = false;
+    private volatile Thread mWriterThread;
+
+    //writer thread only
+    private FileOutputStream mOut;
+    private FileChannel mChannel;
+    private long mFileBytes;
+    private long mFileOpenedAt;
+    private long mReportedDropped;
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * @param dir created if it does not exist
+     * @param baseName file name without extension
+     * @param extension including the dot e.g. ".log"
+     * @param capacity max events waiting to be written, rounded up to a power of 2
+     */
+    protected AbsLogFileSink(@NotNull File dir, @NotNull String baseName, @NotNull String extension, int capacity)
+    {
+        if (capacity < 2)
+            throw new IllegalArgumentException("capacity must be >= 2");
+
+        mDir = dir;
+        mBaseName = baseName;
+        mExtension = extension;
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mCapacity = size;
+        mMask = size - 1;
+        mEntries = new Entry[size];
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            mEntries[i] = new Entry();
+            mSequences.set(i, i);
+        }
+    }
+
+    //============================================================================================================
+    // SETTERS
+    //============================================================================================================
+
+    public void setMaxFileBytes(long maxFileBytes)
+    {
+        mMaxFileBytes = maxFileBytes;
+    }
+
+    /**
+     * @param maxFileAgeMs age is counted from when this sink opened the file
+     */
+    public void setMaxFileAgeMs(long maxFileAgeMs)
+    {
+        mMaxFileAgeMs = maxFileAgeMs;
+    }
+
+    /**
+     * @param maxFiles including the current file, older files are deleted
+     */
+    public void setMaxFiles(int maxFiles)
+    {
+        if (maxFiles < 1)
+            throw new IllegalArgumentException("maxFiles must be >= 1");
+
+        mMaxFiles = maxFiles;
+    }
+
+    /**
+     * @param flushIntervalMs how long the writer sleeps when the ring is empty. It is woken early if the ring gets half
+     *                        full
+     */
+    public void setFlushIntervalMs(long flushIntervalMs)
+    {
+        mFlushIntervalMs = flushIntervalMs;
+    }
+
+    public void setDropPolicy(@NotNull DropPolicy dropPolicy)
+    {
+        mDropPolicy = dropPolicy;
+    }
+
+    //============================================================================================================
+    // LIFECYCLE
+    //============================================================================================================
+
+    public synchronized void start()
+    {
+        if (mRunning)
+            return;
+
+        mRunning = true;
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runWriter();
+            }
+        }, TAG);
+        thread.setDaemon(true);
+        mWriterThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the writer once it has written everything already logged, waiting up to timeoutMs for it to finish
+     */
+    public void close(long timeoutMs) throws InterruptedException
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            if (!mRunning)
+                return;
+
+            mRunning = false;
+            thread = mWriterThread;
+        }
+
+        LockSupport.unpark(thread);
+        thread.join(timeoutMs);
+    }
+
+    //============================================================================================================
+    // RING
+    //============================================================================================================
+
+    /**
+     * Called on the logging thread. Everything passed must be immutable, or at least not modified once passed.
+     *
+     * @return false if dropped
+     */
+    protected boolean offer(int priority, String tag, String message, StackTraceElement caller, String format, Object[] args)
+    {
+        if (!mRunning)
+            return false;
+
+        while (true)
+        {
+            long tail = mTail.get();
+            int index = (int) (tail & mMask);
+            long sequence = mSequences.get(index);
+
+            if (sequence < tail)
+            {
+                //slot not drained from the last lap yet i.e. full
+                mDroppedCount.incrementAndGet();
+                return false;
+            }
+
+            if (sequence == tail)
+            {
+                if (mDropPolicy == DropPolicy.DROP_LOW_PRIORITY_FIRST && priority < Log.WARN &&
+                        tail - mHead.get() >= mCapacity - (mCapacity >> 2))
+                {
+                    mDroppedCount.incrementAndGet();
+                    return false;
+                }
+
+                if (mTail.compareAndSet(tail, tail + 1))
+                {
+                    Entry entry = mEntries[index];
+                    entry.timeMs = System.currentTimeMillis();
+                    entry.threadId = Thread.currentThread().getId();
+                    entry.priority = priority;
+                    entry.tag = tag;
+                    entry.message = message;
+                    entry.caller = caller;
+                    entry.format = format;
+                    entry.args = args;
+                    mSequences.lazySet(index, tail + 1);
+
+                    if (tail - mHead.get() == mCapacity >> 1)
+                    {
+                        Thread writer = mWriterThread;
+                        if (null != writer)
+                            LockSupport.unpark(writer);
+                    }
+                    return true;
+                }
+            }
+            //else another thread claimed this slot, retry with the new tail
+        }
+    }
+
+    //============================================================================================================
+    // STATS
+    //============================================================================================================
+
+    /**
+     * @return events lost because the ring was full
+     */
+    public long getDroppedCount()
+    {
+        return mDroppedCount.get();
+    }
+
+    public long getWrittenCount()
+    {
+        return mWrittenCount.get();
+    }
+
+    /**
+     * @return events waiting to be written
+     */
+    public long getBacklog()
+    {
+        return mTail.get() - mHead.get();
+    }
+
+    /**
+     * @return the file currently being written to
+     */
+    public File getCurrentFile()
+    {
+        return getFile(0);
+    }
+
+    //============================================================================================================
+    // WRITER
+    //============================================================================================================
+
+    private void runWriter()
+    {
+        try
+        {
+            openFile();
+
+            while (true)
+            {
+                //read before draining so anything logged before close() is still written
+                boolean running = mRunning;
+
+                int drained = drain();
+                if (drained > 0)
+                    flushBuffer();
+
+                if (!running)
+                    break;
+
+                if (drained == 0)
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(mFlushIntervalMs));
+            }
+        }
+        catch (IOException e)
+        {
+            //not XLog as that would come straight back here
+            Log.e(TAG, "log file writer stopped", e);
+            mRunning = false;
+        }
+        finally
+        {
+            closeFile();
+        }
+    }
+
+    /**
+     * @return the number of events drained
+     */
+    private int drain() throws IOException
+    {
+        int drained = 0;
+        long head = mHead.get();
+
+        while (true)
+        {
+            int index = (int) (head & mMask);
+            if (mSequences.get(index) != head + 1)
+                break;
+
+            Entry entry = mEntries[index];
+            rotateIfNeeded();
+            writeEntry(entry);
+            entry.clear();
+
+            //free the slot for the next lap
+            mSequences.lazySet(index, head + mCapacity);
+            head++;
+            mHead.lazySet(head);
+            drained++;
+        }
+
+        long dropped = mDroppedCount.get();
+        if (dropped != mReportedDropped)
+        {
+            rotateIfNeeded();
+            writeDropped(System.currentTimeMillis(), dropped - mReportedDropped);
+            mReportedDropped = dropped;
+            drained++;
+        }
+
+        mWrittenCount.addAndGet(drained);
+        return drained;
+    }
+
+    //============================================================================================================
+    // ENCODING
+    //============================================================================================================
+
+    /**
+     * Called on the writer thread to encode an entry with {@link #write(byte[], int, int)}. The entry is reused once
+     * this returns.
+     */
+    protected abstract void writeEntry(@NotNull Entry entry) throws IOException;
+
+    /**
+     * Called on the writer thread to record that count entries were dropped
+     */
+    protected abstract void writeDropped(long timeMs, long count) throws IOException;
+
+    /**
+     * Called on the writer thread each time a new file is opened, before any entries are written to it. Files must
+     * decode on their own as older ones are deleted, so anything like a dictionary has to start again here.
+     */
+    protected void onFileOpened() throws IOException
+    {
+    }
+
+    /**
+     * Called on the writer thread before appending to a file left from an earlier run, e.g. to find a record torn by a
+     * crash mid write so it can be cut off rather than having later records appended after it
+     *
+     * @return how many bytes from the start can be appended after, the rest is truncated. -1 to not append to it at all
+     *         and rotate it out of the way instead
+     */
+    protected long getAppendableLength(@NotNull File file) throws IOException
+    {
+        return file.length();
+    }
+
+    /**
+     * @return bytes in the current file, including any not yet flushed. Zero for a new file
+     */
+    protected long getFileBytes()
+    {
+        return mFileBytes + mBuffer.position();
+    }
+
+    /**
+     * Only call from {@link #writeEntry(Entry)}, {@link #writeDropped(long, long)} or {@link #onFileOpened()}
+     */
+    protected void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (length > mBuffer.remaining())
+            flushBuffer();
+
+        if (length > mBuffer.capacity())
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+        else
+            mBuffer.put(bytes, offset, length);
+    }
+
+    private void rotateIfNeeded() throws IOException
+    {
+        if (mFileBytes + mBuffer.position() >= mMaxFileBytes ||
+                System.currentTimeMillis() - mFileOpenedAt > mMaxFileAgeMs)
+        {
+            flushBuffer();
+            rotate();
+        }
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        mBuffer.flip();
+        writeFully(mBuffer);
+        mBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+            mFileBytes += mChannel.write(buffer);
+    }
+
+    private void openFile() throws IOException
+    {
+        if (!mDir.exists() && !mDir.mkdirs())
+            throw new IOException("Could not create " + mDir);
+
+        File file = getFile(0);
+        long appendable = file.length() > 0 ? getAppendableLength(file) : 0;
+        if (appendable < 0)
+        {
+            Log.w(TAG, "not appending to " + file + ", rotating it");
+            rotate();
+            return;
+        }
+
+        mOut = new FileOutputStream(file, true);
+        mChannel = mOut.getChannel();
+        if (appendable < file.length())
+        {
+            Log.w(TAG, "dropping " + (file.length() - appendable) + " bytes of torn records from " + file);
+            mChannel.truncate(appendable);
+        }
+        mFileBytes = appendable;
+        mFileOpenedAt = System.currentTimeMillis();
+        onFileOpened();
+    }
+
+    private void closeFile()
+    {
+        if (null == mOut)
+            return;
+
+        try
+        {
+            mOut.close();
+        }
+        catch (IOException e)
+        {
+            Log.w(TAG, "error closing log file", e);
+        }
+        mOut = null;
+        mChannel = null;
+    }
+
+    /**
+     * Shifts each file up one (baseName.log -> baseName.1.log etc.) deleting the oldest, then opens a fresh file
+     */
+    private void rotate() throws IOException
+    {
+        closeFile();
+
+        int maxFiles = mMaxFiles;
+        File oldest = getFile(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete())
+            throw new IOException("Could not delete " + oldest);
+
+        for (int i = maxFiles - 2; i >= 0; i--)
+        {
+            File from = getFile(i);
+            if (from.exists() && !from.renameTo(getFile(i + 1)))
+                throw new IOException("Could not rename " + from);
+        }
+
+        openFile();
+    }
+
+    private File getFile(int index)
+    {
+        return new File(mDir, index == 0 ? mBaseName + mExtension : mBaseName + "." + index + mExtension);
+    }
+
+    /**
+     * Preallocated ring slot, reused every lap
+     */
+    protected static class Entry
+    {
+        public long timeMs;
+        public long threadId;
+        public int priority;
+        public String tag;
+        public String message;
+        public StackTraceElement caller;
+        public String format;
+        public Object[] args;
+
+        void clear()
+        {
+            tag = null;
+            message = null;
+            caller = null;
+            format = null;
+            args = null;
+        }
+    }
+}
@@ -2,129 +2,760 @@ package com.doridori.lib.util;
 
 import android.util.Log;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * See roboguice.util.temp.Ln (seen in robospice) for a similar log class with some extras i.e auto disables D&V for non debug apps
+ *
+ * As well as the plain text methods each level has parameterized overloads which take a format with "{}" placeholders
+ * e.g. XLog.d("bound {} of {}", position, count). With these the level is checked before anything else happens, so a
+ * filtered out call does not capture the stack, format the args or allocate anything (other than any boxing of
+ * primitive args - ints, longs and doubles have their own overloads to avoid that). Calls that are logged are built in
+ * a reused per-thread StringBuilder. Prefer these to concatenating text before the call in hot paths such as adapters
+ * and network callbacks.
+ *
+ * XLog.d(String, String) is also the older tag + text method, so a single String arg at debug level lands there. It
+ * treats its first arg as a format when that contains a "{}" placeholder, so XLog.d("loaded {}", name) works as
+ * expected.
+ *
+ * Levels can be changed at runtime with {@link #setLevel(int)}, and overridden per tag (the callers simple class name
+ * unless a tag is passed) with {@link #setLevel(String, int)} e.g. to turn on debug logs for one class while looking
+ * at a live issue. Defaults to {@link #ALL}, so release builds should call setLevel() on startup. While there are no
+ * tag overrides above the global level a filtered out call costs one volatile read. {@link #setCallerInfoEnabled(boolean)}
+ * turns off the stack walk used for the "Class: method() [line]" prefix and tag, which is most of the cost of a call
+ * that is logged.
+ *
+ * Noisy call sites (per frame or per adapter item) can be throttled with a {@link Limit} kept in a static field and
+ * passed to the d() / v() overloads that take one, or for every call site at once with
+ * {@link #setCallSiteMaxPerSecond(int)}. When calls have been suppressed the next one that gets through is preceded by a
+ * "suppressed n similar messages" line.
+ *
+ * Everything logged can also be passed to a {@link Sink} e.g. {@link XLogFileSink} to keep logs from the field, or to
+ * an {@link EventSink} e.g. {@link XLogBinarySink} which stores the unformatted call.
  */
 public class XLog
 {
-    private static final int NONE = 0;
-    private static final int ERRORS_ONLY = 1;
-    private static final int ERRORS_WARNINGS = 2;
-    private static final int ERRORS_WARNINGS_INFO = 3;
-    private static final int ERRORS_WARNINGS_INFO_DEBUG = 4;
-    private static final int ALL = 5;
+    public static final int NONE = 0;
+    public static final int ERRORS_ONLY = 1;
+    public static final int ERRORS_WARNINGS = 2;
+    public static final int ERRORS_WARNINGS_INFO = 3;
+    public static final int ERRORS_WARNINGS_INFO_DEBUG = 4;
+    public static final int ALL = 5;
+
+    /**
+     * Tag used when caller info is off and no tag was passed
+     */
+    public static final String DEFAULT_TAG = "XLog";
+
+    /**
+     * Frames between the Throwable created in {@link #getCallSite()} and the code calling XLog: getCallSite(), the
+     * private log method and the public XLog method
+     */
+    private static final int CALLER_DEPTH = 3;
+    /**
+     * The cache is cleared if it gets this big, which only happens with generated code or a lot of dynamic tags
+     */
+    private static final int MAX_CALL_SITES = 1024;
+
+    private static volatile int sLevel = ALL;
+    /**
+     * The highest of sLevel and all the tag levels, so calls can be filtered with one read before the tag is known
+     */
+    private static volatile int sMaxLevel = ALL;
+    /**
+     * Copy on write, never modified once published
+     */
+    private static volatile Map<String, Integer> sTagLevels = Collections.emptyMap();
+    private static volatile boolean sCallerInfo = true;
+    private static volatile Sink sSink;
+    private static volatile EventSink sEventSink;
+    private static volatile boolean sLogcat = true;
+    private static volatile int sCallSiteMaxPerSecond = 0;
 
-    private static final int LOGGING_LEVEL_FILTER = ALL;
+    private static final String PLACEHOLDER = "{}";
+    private static final int BUILDER_INITIAL_CAPACITY = 256;
+    /**
+     * Builders that have grown bigger than this (i.e. after logging a large response) are not kept
+     */
+    private static final int BUILDER_MAX_RETAINED_CAPACITY = 8 * 1024;
+
+    /**
+     * Formatted prefix and tag per call site, so they are built once rather than on every call
+     */
+    private static final ConcurrentHashMap<StackTraceElement, CallSite> sCallSites =
+            new ConcurrentHashMap<StackTraceElement, CallSite>();
+
+    private static final ThreadLocal<StringBuilder> sBuilder = new ThreadLocal<StringBuilder>()
+    {
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder(BUILDER_INITIAL_CAPACITY);
+        }
+    };
 
     static
     {
-        if (LOGGING_LEVEL_FILTER >= ALL)
+        if (isEnabled(ALL))
             Log.v(XLog.class.getSimpleName(), "ILog class reloaded");
     }
 
     public static void e(String text, Exception e)
     {
-        e(text + " : " + e.getClass().getName() + ": " + e.getMessage());
+        if (isEnabled(ERRORS_ONLY))
+            log(Log.ERROR, null, text + " : " + e.getClass().getName() + ": " + e.getMessage(), null);
     }
 
     public static void e(String text)
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_ONLY)
-        {
-            Trace trace = getTrace();
-            Log.e(trace.clazz, trace.trace + text);
-        }
+        if (isEnabled(ERRORS_ONLY))
+            log(Log.ERROR, null, text, null);
     }
 
     public static void w(String text)
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS)
-        {
-            Trace trace = getTrace();
-            Log.w(trace.clazz, trace.trace + text);
-        }
+        if (isEnabled(ERRORS_WARNINGS))
+            log(Log.WARN, null, text, null);
     }
 
     public static void i(String text)
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS_INFO)
-        {
-            Trace trace = getTrace();
-            Log.i(trace.clazz, trace.trace + text);
-        }
+        if (isEnabled(ERRORS_WARNINGS_INFO))
+            log(Log.INFO, null, text, null);
     }
 
     public static void d()
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS_INFO_DEBUG)
-        {
-            Trace trace = getTrace();
-            Log.d(trace.clazz, trace.trace + "<method>");
-        }
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            log(Log.DEBUG, null, "<method>", null);
     }
 
     public static void d(Object obj)
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS_INFO_DEBUG)
-        {
-            Trace trace = getTrace();
-            Log.d(obj.toString(), trace.trace);
-        }
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            log(Log.DEBUG, obj.toString(), "", null);
     }
 
     public static void d(String text)
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS_INFO_DEBUG)
-        {
-            Trace trace = getTrace();
-            Log.d(trace.clazz, trace.trace + text);
-        }
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            log(Log.DEBUG, null, text, null);
     }
 
+    /**
+     * As {@link #d(String)} with a blank line first
+     */
     public static void dn(String text)
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS_INFO_DEBUG)
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
         {
-            Trace trace = getTrace();
-            Log.d(trace.clazz, "");//blank line
-            Log.d(trace.clazz, trace.trace + text);
+            CallSite site = getDirectCallSite();
+            String tag = begin(Log.DEBUG, null, site, null);
+            if (null == tag)
+                return;
+
+            if (isTextNeeded())
+                println(Log.DEBUG, tag, "");//blank line
+            emit(Log.DEBUG, tag, site, text);
         }
     }
 
+    /**
+     * Tag + text, or if tag contains a "{}" placeholder the same as {@link #d(String, Object)} with text as the arg
+     */
     public static void d(String tag, String text)
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS_INFO_DEBUG)
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
         {
-            Trace trace = getTrace();
-            Log.d(tag, trace.trace + text);
+            if (null != tag && tag.contains("{}"))
+                logArgs(Log.DEBUG, tag, 1, text, null, null, null);
+            else
+                log(Log.DEBUG, tag, text, null);
         }
     }
 
     public static void d(Object obj, String text)
     {
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS_INFO_DEBUG)
-        {
-            Trace trace = getTrace();
-            Log.d(obj.getClass().getName(), trace.trace + text);
-        }
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            log(Log.DEBUG, obj.getClass().getName(), text, null);
     }
 
     public static void v()
     {
-        if (LOGGING_LEVEL_FILTER >= ALL)
-        {
-            Trace trace = getTrace();
-            Log.v(trace.clazz, trace.trace + "<method>");
-        }
+        if (isEnabled(ALL))
+            log(Log.VERBOSE, null, "<method>", null);
     }
 
     public static void v(String text)
     {
-        if (LOGGING_LEVEL_FILTER >= ALL)
+        if (isEnabled(ALL))
+            log(Log.VERBOSE, null, text, null);
+    }
+
+    //============================================================================================================
+    // LEVELS
+    //============================================================================================================
+
+    /**
+     * @param level one of {@link #NONE}, {@link #ERRORS_ONLY}, {@link #ERRORS_WARNINGS}, {@link #ERRORS_WARNINGS_INFO},
+     *              {@link #ERRORS_WARNINGS_INFO_DEBUG} or {@link #ALL}. Used for any tag without its own level
+     */
+    public static synchronized void setLevel(int level)
+    {
+        sLevel = level;
+        updateMaxLevel();
+    }
+
+    public static int getLevel()
+    {
+        return sLevel;
+    }
+
+    /**
+     * @param tag the tag as logged i.e. the callers simple class name unless a tag was passed to the log call
+     * @param level see {@link #setLevel(int)}
+     */
+    public static synchronized void setLevel(String tag, int level)
+    {
+        Map<String, Integer> tagLevels = new HashMap<String, Integer>(sTagLevels);
+        tagLevels.put(tag, level);
+        sTagLevels = tagLevels;
+        updateMaxLevel();
+    }
+
+    /**
+     * Sets the level for the tag this class logs with. For inner classes that is Outer$Inner
+     */
+    public static void setLevel(Class<?> clazz, int level)
+    {
+        String className = clazz.getName();
+        setLevel(className.substring(className.lastIndexOf('.') + 1), level);
+    }
+
+    /**
+     * Go back to using the global level for this tag
+     */
+    public static synchronized void clearLevel(String tag)
+    {
+        Map<String, Integer> tagLevels = new HashMap<String, Integer>(sTagLevels);
+        tagLevels.remove(tag);
+        sTagLevels = tagLevels;
+        updateMaxLevel();
+    }
+
+    public static synchronized void clearTagLevels()
+    {
+        sTagLevels = Collections.emptyMap();
+        updateMaxLevel();
+    }
+
+    /**
+     * @return the level for this tag, or the global level if it does not have one
+     */
+    public static int getLevel(String tag)
+    {
+        Map<String, Integer> tagLevels = sTagLevels;
+        if (tagLevels.isEmpty())
+            return sLevel;
+
+        Integer level = tagLevels.get(tag);
+        return null == level ? sLevel : level;
+    }
+
+    /**
+     * @param callerInfo if false calls are not prefixed with "Class: method() [line] - " and are tagged with
+     *                   {@link #DEFAULT_TAG} (unless a tag is passed), which saves walking the stack. Tag levels set for
+     *                   class names will then not match.
+     */
+    public static void setCallerInfoEnabled(boolean callerInfo)
+    {
+        sCallerInfo = callerInfo;
+    }
+
+    public static boolean isCallerInfoEnabled()
+    {
+        return sCallerInfo;
+    }
+
+    /**
+     * @param maxPerSecond calls logged per second from any one call site (the rest are suppressed before formatting),
+     *                     0 for no limit. Needs caller info on as that is how call sites are told apart - the stack is
+     *                     still walked for suppressed calls, so use a {@link Limit} for the hottest sites
+     */
+    public static void setCallSiteMaxPerSecond(int maxPerSecond)
+    {
+        sCallSiteMaxPerSecond = maxPerSecond;
+    }
+
+    /**
+     * Cheap check to guard expensive log only work. May return true for calls that are then filtered by their tags
+     * level.
+     *
+     * @param level see {@link #setLevel(int)}
+     */
+    public static boolean isEnabled(int level)
+    {
+        return level <= sMaxLevel;
+    }
+
+    private static void updateMaxLevel()
+    {
+        int maxLevel = sLevel;
+        for (Integer level : sTagLevels.values())
+            maxLevel = Math.max(maxLevel, level);
+        sMaxLevel = maxLevel;
+    }
+
+    //============================================================================================================
+    // SINK
+    //============================================================================================================
+
+    /**
+     * Receives every line XLog logs, as well as it going to logcat. Called on the logging thread so must be quick.
+     */
+    public interface Sink
+    {
+        /**
+         * @param priority android.util.Log priority e.g. {@link Log#DEBUG}
+         * @param message including the caller info prefix, if enabled
+         */
+        public void log(int priority, String tag, String message);
+    }
+
+    /**
+     * @param sink can be null to remove
+     */
+    public static void setSink(Sink sink)
+    {
+        sSink = sink;
+    }
+
+    public static Sink getSink()
+    {
+        return sSink;
+    }
+
+    /**
+     * Receives every call XLog logs before it is formatted, for sinks that store the format and args rather than the
+     * text e.g. {@link XLogBinarySink}. Called on the logging thread so must be quick.
+     */
+    public interface EventSink
+    {
+        /**
+         * @param caller null if caller info is off
+         * @param format null for the plain text methods, in which case args is just the text
+         * @param args primitive args are boxed. Do not hold on to the array, it may be the callers varargs array
+         */
+        public void logEvent(int priority, String tag, StackTraceElement caller, String format, Object[] args);
+    }
+
+    /**
+     * @param eventSink can be null to remove
+     */
+    public static void setEventSink(EventSink eventSink)
+    {
+        sEventSink = eventSink;
+    }
+
+    public static EventSink getEventSink()
+    {
+        return sEventSink;
+    }
+
+    /**
+     * @param logcat if false lines only go to the sinks. If there is only an {@link EventSink} calls are then not
+     *               formatted at all
+     */
+    public static void setLogcatEnabled(boolean logcat)
+    {
+        sLogcat = logcat;
+    }
+
+    //============================================================================================================
+    // LIMITED
+    //============================================================================================================
+
+    /**
+     * Rate limit or sample for one call site. Keep in a static field next to the call and pass to the d() / v()
+     * overloads that take one, so a suppressed call costs a level check and a counter increment:
+     *
+     * <pre>
+     * private static final XLog.Limit BIND_LOG_LIMIT = XLog.Limit.perSecond(5);
+     * ...
+     * XLog.d(BIND_LOG_LIMIT, "bound {}", position);
+     * </pre>
+     */
+    public static final class Limit
+    {
+        private static final long WINDOW_MS = 1000;
+
+        private final int mOneIn;
+        private final int mMaxPerSecond;
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mWindowStart = new AtomicLong();
+        private final AtomicLong mSuppressed = new AtomicLong();
+
+        private Limit(int oneIn, int maxPerSecond)
         {
-            Trace trace = getTrace();
-            Log.v(trace.clazz, trace.trace + text);
+            mOneIn = oneIn;
+            mMaxPerSecond = maxPerSecond;
         }
+
+        /**
+         * Logs the first call then every nth after that. Counter based rather than random so it costs less and is
+         * repeatable
+         */
+        public static Limit oneIn(int n)
+        {
+            if (n < 1)
+                throw new IllegalArgumentException("n must be >= 1");
+
+            return new Limit(n, 0);
+        }
+
+        /**
+         * Logs at most max calls in each one second window
+         */
+        public static Limit perSecond(int max)
+        {
+            if (max < 1)
+                throw new IllegalArgumentException("max must be >= 1");
+
+            return new Limit(0, max);
+        }
+
+        /**
+         * @return true if this call should be logged, otherwise counts it as suppressed
+         */
+        public boolean allow()
+        {
+            boolean allowed;
+            if (mOneIn > 0)
+            {
+                allowed = mCount.getAndIncrement() % mOneIn == 0;
+            }
+            else
+            {
+                long now = System.currentTimeMillis();
+                long windowStart = mWindowStart.get();
+                if (now - windowStart >= WINDOW_MS && mWindowStart.compareAndSet(windowStart, now))
+                    mCount.set(0);
+
+                allowed = mCount.incrementAndGet() <= mMaxPerSecond;
+            }
+
+            if (!allowed)
+                mSuppressed.incrementAndGet();
+
+            return allowed;
+        }
+
+        /**
+         * @return calls suppressed since the last call to this
+         */
+        long takeSuppressedCount()
+        {
+            return mSuppressed.getAndSet(0);
+        }
+
+        public long getSuppressedCount()
+        {
+            return mSuppressed.get();
+        }
+    }
+
+    public static void d(Limit limit, String text)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG) && limit.allow())
+            log(Log.DEBUG, null, text, limit);
+    }
+
+    public static void d(Limit limit, String format, Object arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG) && limit.allow())
+            logArgs(Log.DEBUG, format, 1, arg, null, null, limit);
+    }
+
+    public static void d(Limit limit, String format, Object arg1, Object arg2)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG) && limit.allow())
+            logArgs(Log.DEBUG, format, 2, arg1, arg2, null, limit);
+    }
+
+    public static void d(Limit limit, String format, long arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG) && limit.allow())
+            logLong(Log.DEBUG, format, arg, limit);
+    }
+
+    public static void d(Limit limit, String format, long arg1, long arg2)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG) && limit.allow())
+            logLongs(Log.DEBUG, format, arg1, arg2, limit);
+    }
+
+    public static void v(Limit limit, String text)
+    {
+        if (isEnabled(ALL) && limit.allow())
+            log(Log.VERBOSE, null, text, limit);
+    }
+
+    public static void v(Limit limit, String format, Object arg)
+    {
+        if (isEnabled(ALL) && limit.allow())
+            logArgs(Log.VERBOSE, format, 1, arg, null, null, limit);
+    }
+
+    public static void v(Limit limit, String format, Object arg1, Object arg2)
+    {
+        if (isEnabled(ALL) && limit.allow())
+            logArgs(Log.VERBOSE, format, 2, arg1, arg2, null, limit);
+    }
+
+    public static void v(Limit limit, String format, long arg)
+    {
+        if (isEnabled(ALL) && limit.allow())
+            logLong(Log.VERBOSE, format, arg, limit);
+    }
+
+    public static void v(Limit limit, String format, long arg1, long arg2)
+    {
+        if (isEnabled(ALL) && limit.allow())
+            logLongs(Log.VERBOSE, format, arg1, arg2, limit);
+    }
+
+    //============================================================================================================
+    // PARAMETERIZED
+    //============================================================================================================
+
+    public static void e(String format, Object arg)
+    {
+        if (isEnabled(ERRORS_ONLY))
+            logArgs(Log.ERROR, format, 1, arg, null, null, null);
+    }
+
+    public static void e(String format, Object arg1, Object arg2)
+    {
+        if (isEnabled(ERRORS_ONLY))
+            logArgs(Log.ERROR, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void e(String format, Object arg1, Object arg2, Object arg3)
+    {
+        if (isEnabled(ERRORS_ONLY))
+            logArgs(Log.ERROR, format, 3, arg1, arg2, arg3, null);
+    }
+
+    /**
+     * Allocates the varargs array even when filtered, use the fixed arity overloads where possible
+     */
+    public static void e(String format, Object... args)
+    {
+        if (isEnabled(ERRORS_ONLY))
+            logArray(Log.ERROR, format, args, null);
+    }
+
+    public static void e(String format, long arg)
+    {
+        if (isEnabled(ERRORS_ONLY))
+            logLong(Log.ERROR, format, arg, null);
+    }
+
+    public static void e(String format, double arg)
+    {
+        if (isEnabled(ERRORS_ONLY))
+            logDouble(Log.ERROR, format, arg, null);
+    }
+
+    public static void e(String format, long arg1, long arg2)
+    {
+        if (isEnabled(ERRORS_ONLY))
+            logLongs(Log.ERROR, format, arg1, arg2, null);
+    }
+
+    public static void w(String format, Object arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS))
+            logArgs(Log.WARN, format, 1, arg, null, null, null);
+    }
+
+    public static void w(String format, Object arg1, Object arg2)
+    {
+        if (isEnabled(ERRORS_WARNINGS))
+            logArgs(Log.WARN, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void w(String format, Object arg1, Object arg2, Object arg3)
+    {
+        if (isEnabled(ERRORS_WARNINGS))
+            logArgs(Log.WARN, format, 3, arg1, arg2, arg3, null);
+    }
+
+    /**
+     * Allocates the varargs array even when filtered, use the fixed arity overloads where possible
+     */
+    public static void w(String format, Object... args)
+    {
+        if (isEnabled(ERRORS_WARNINGS))
+            logArray(Log.WARN, format, args, null);
+    }
+
+    public static void w(String format, long arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS))
+            logLong(Log.WARN, format, arg, null);
+    }
+
+    public static void w(String format, double arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS))
+            logDouble(Log.WARN, format, arg, null);
+    }
+
+    public static void w(String format, long arg1, long arg2)
+    {
+        if (isEnabled(ERRORS_WARNINGS))
+            logLongs(Log.WARN, format, arg1, arg2, null);
+    }
+
+    public static void i(String format, Object arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO))
+            logArgs(Log.INFO, format, 1, arg, null, null, null);
+    }
+
+    public static void i(String format, Object arg1, Object arg2)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO))
+            logArgs(Log.INFO, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void i(String format, Object arg1, Object arg2, Object arg3)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO))
+            logArgs(Log.INFO, format, 3, arg1, arg2, arg3, null);
+    }
+
+    /**
+     * Allocates the varargs array even when filtered, use the fixed arity overloads where possible
+     */
+    public static void i(String format, Object... args)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO))
+            logArray(Log.INFO, format, args, null);
+    }
+
+    public static void i(String format, long arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO))
+            logLong(Log.INFO, format, arg, null);
+    }
+
+    public static void i(String format, double arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO))
+            logDouble(Log.INFO, format, arg, null);
+    }
+
+    public static void i(String format, long arg1, long arg2)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO))
+            logLongs(Log.INFO, format, arg1, arg2, null);
+    }
+
+    public static void d(String format, Object arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            logArgs(Log.DEBUG, format, 1, arg, null, null, null);
+    }
+
+    public static void d(String format, Object arg1, Object arg2)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            logArgs(Log.DEBUG, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void d(String format, Object arg1, Object arg2, Object arg3)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            logArgs(Log.DEBUG, format, 3, arg1, arg2, arg3, null);
+    }
+
+    /**
+     * Allocates the varargs array even when filtered, use the fixed arity overloads where possible
+     */
+    public static void d(String format, Object... args)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            logArray(Log.DEBUG, format, args, null);
+    }
+
+    public static void d(String format, long arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            logLong(Log.DEBUG, format, arg, null);
+    }
+
+    public static void d(String format, double arg)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            logDouble(Log.DEBUG, format, arg, null);
+    }
+
+    public static void d(String format, long arg1, long arg2)
+    {
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
+            logLongs(Log.DEBUG, format, arg1, arg2, null);
+    }
+
+    public static void v(String format, Object arg)
+    {
+        if (isEnabled(ALL))
+            logArgs(Log.VERBOSE, format, 1, arg, null, null, null);
+    }
+
+    public static void v(String format, Object arg1, Object arg2)
+    {
+        if (isEnabled(ALL))
+            logArgs(Log.VERBOSE, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void v(String format, Object arg1, Object arg2, Object arg3)
+    {
+        if (isEnabled(ALL))
+            logArgs(Log.VERBOSE, format, 3, arg1, arg2, arg3, null);
+    }
+
+    /**
+     * Allocates the varargs array even when filtered, use the fixed arity overloads where possible
+     */
+    public static void v(String format, Object... args)
+    {
+        if (isEnabled(ALL))
+            logArray(Log.VERBOSE, format, args, null);
+    }
+
+    public static void v(String format, long arg)
+    {
+        if (isEnabled(ALL))
+            logLong(Log.VERBOSE, format, arg, null);
+    }
+
+    public static void v(String format, double arg)
+    {
+        if (isEnabled(ALL))
+            logDouble(Log.VERBOSE, format, arg, null);
+    }
+
+    public static void v(String format, long arg1, long arg2)
+    {
+        if (isEnabled(ALL))
+            logLongs(Log.VERBOSE, format, arg1, arg2, null);
     }
 
     /**
@@ -132,35 +763,478 @@ public class XLog
      */
     public static void dTraceWhole()
     {
-
-        if (LOGGING_LEVEL_FILTER >= ERRORS_WARNINGS_INFO_DEBUG)
+        if (isEnabled(ERRORS_WARNINGS_INFO_DEBUG))
         {
-            Throwable t = new Throwable();
-            StackTraceElement[] elements = t.getStackTrace();
+            //with caller info on, one capture for both the call site and the trace
+            StackTraceElement[] elements = null;
+            CallSite site = null;
+            if (sCallerInfo)
+            {
+                elements = new Throwable().getStackTrace();
+                site = getCallSite(elements[1]);
+            }
+
+            String tag = begin(Log.DEBUG, null, site, null);
+            if (null == tag)
+                return;
+
+            if (null == elements)
+                elements = new Throwable().getStackTrace();
+
             StringBuilder builder = new StringBuilder();
             for (StackTraceElement e : elements)
             {
                 builder.append("\n\t");
                 builder.append(e);
             }
-            Log.d(XLog.class.getSimpleName(), getTrace().trace + builder.toString());
+            emit(Log.DEBUG, tag, site, builder.toString());
         }
     }
 
-    private static Trace getTrace()
+    //============================================================================================================
+    // INTERNAL
+    //============================================================================================================
+
+    /**
+     * @param tag if null the callers class name is used
+     * @param limit if not null the call has already been allowed by it
+     */
+    private static void log(int priority, String tag, String text, Limit limit)
     {
+        CallSite site = getCallSite();
+        tag = begin(priority, tag, site, limit);
+        if (null == tag)
+            return;
 
-        int depth = 2;
-        Throwable t = new Throwable();
-        StackTraceElement[] elements = t.getStackTrace();
-        String callerMethodName = elements[depth].getMethodName();
-        String callerClassPath = elements[depth].getClassName();
-        int lineNum = elements[depth].getLineNumber();
-        int i = callerClassPath.lastIndexOf('.');
-        String callerClassName = callerClassPath.substring(i + 1);
-        String trace = callerClassName + ": " + callerMethodName + "() [" + lineNum + "] - ";
+        EventSink eventSink = sEventSink;
+        if (null != eventSink)
+            eventSink.logEvent(priority, tag, null == site ? null : site.caller, null, new Object[]{text});
 
-        return new Trace(trace, callerClassName);
+        if (!isTextNeeded())
+            return;
+
+        StringBuilder builder = obtainBuilder();
+        try
+        {
+            appendTrace(builder, site);
+            builder.append(text);
+            println(priority, tag, builder.toString());
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+    }
+
+    private static void logArgs(int priority, String format, int argCount, Object arg1, Object arg2, Object arg3, Limit limit)
+    {
+        CallSite site = getCallSite();
+        String tag = begin(priority, null, site, limit);
+        if (null == tag)
+            return;
+
+        EventSink eventSink = sEventSink;
+        if (null != eventSink)
+        {
+            Object[] args = argCount == 1 ? new Object[]{arg1} :
+                    argCount == 2 ? new Object[]{arg1, arg2} :
+                            new Object[]{arg1, arg2, arg3};
+            eventSink.logEvent(priority, tag, null == site ? null : site.caller, format, args);
+        }
+
+        if (!isTextNeeded())
+            return;
+
+        StringBuilder builder = obtainBuilder();
+        try
+        {
+            appendTrace(builder, site);
+
+            int index = 0;
+            for (int i = 0; i < argCount && index != -1; i++)
+            {
+                index = appendToPlaceholder(builder, format, index);
+                if (index != -1)
+                    builder.append(i == 0 ? arg1 : i == 1 ? arg2 : arg3);
+            }
+            if (index != -1)
+                builder.append(format, index, format.length());
+
+            println(priority, tag, builder.toString());
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+    }
+
+    private static void logArray(int priority, String format, Object[] args, Limit limit)
+    {
+        CallSite site = getCallSite();
+        String tag = begin(priority, null, site, limit);
+        if (null == tag)
+            return;
+
+        if (null == args)
+            args = new Object[0];
+
+        EventSink eventSink = sEventSink;
+        if (null != eventSink)
+            eventSink.logEvent(priority, tag, null == site ? null : site.caller, format, args);
+
+        if (!isTextNeeded())
+            return;
+
+        StringBuilder builder = obtainBuilder();
+        try
+        {
+            appendTrace(builder, site);
+
+            int index = 0;
+            for (int i = 0; i < args.length && index != -1; i++)
+            {
+                index = appendToPlaceholder(builder, format, index);
+                if (index != -1)
+                    builder.append(args[i]);
+            }
+            if (index != -1)
+                builder.append(format, index, format.length());
+
+            println(priority, tag, builder.toString());
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+    }
+
+    private static void logLong(int priority, String format, long arg, Limit limit)
+    {
+        CallSite site = getCallSite();
+        String tag = begin(priority, null, site, limit);
+        if (null == tag)
+            return;
+
+        EventSink eventSink = sEventSink;
+        if (null != eventSink)
+            eventSink.logEvent(priority, tag, null == site ? null : site.caller, format, new Object[]{arg});
+
+        if (!isTextNeeded())
+            return;
+
+        StringBuilder builder = obtainBuilder();
+        try
+        {
+            appendTrace(builder, site);
+
+            int index = appendToPlaceholder(builder, format, 0);
+            if (index != -1)
+            {
+                builder.append(arg);
+                builder.append(format, index, format.length());
+            }
+
+            println(priority, tag, builder.toString());
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+    }
+
+    private static void logLongs(int priority, String format, long arg1, long arg2, Limit limit)
+    {
+        CallSite site = getCallSite();
+        String tag = begin(priority, null, site, limit);
+        if (null == tag)
+            return;
+
+        EventSink eventSink = sEventSink;
+        if (null != eventSink)
+            eventSink.logEvent(priority, tag, null == site ? null : site.caller, format, new Object[]{arg1, arg2});
+
+        if (!isTextNeeded())
+            return;
+
+        StringBuilder builder = obtainBuilder();
+        try
+        {
+            appendTrace(builder, site);
+
+            int index = appendToPlaceholder(builder, format, 0);
+            if (index != -1)
+            {
+                builder.append(arg1);
+                index = appendToPlaceholder(builder, format, index);
+                if (index != -1)
+                {
+                    builder.append(arg2);
+                    builder.append(format, index, format.length());
+                }
+            }
+
+            println(priority, tag, builder.toString());
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+    }
+
+    private static void logDouble(int priority, String format, double arg, Limit limit)
+    {
+        CallSite site = getCallSite();
+        String tag = begin(priority, null, site, limit);
+        if (null == tag)
+            return;
+
+        EventSink eventSink = sEventSink;
+        if (null != eventSink)
+            eventSink.logEvent(priority, tag, null == site ? null : site.caller, format, new Object[]{arg});
+
+        if (!isTextNeeded())
+            return;
+
+        StringBuilder builder = obtainBuilder();
+        try
+        {
+            appendTrace(builder, site);
+
+            int index = appendToPlaceholder(builder, format, 0);
+            if (index != -1)
+            {
+                builder.append(arg);
+                builder.append(format, index, format.length());
+            }
+
+            println(priority, tag, builder.toString());
+        }
+        finally
+        {
+            releaseBuilder(builder);
+        }
+    }
+
+    /**
+     * Appends format from start up to the next placeholder
+     *
+     * @return the index after the placeholder, or -1 if there are no more (in which case the rest of format has been
+     * appended)
+     */
+    private static int appendToPlaceholder(StringBuilder builder, String format, int start)
+    {
+        int placeholder = format.indexOf(PLACEHOLDER, start);
+        if (placeholder == -1)
+        {
+            builder.append(format, start, format.length());
+            return -1;
+        }
+
+        builder.append(format, start, placeholder);
+        return placeholder + PLACEHOLDER.length();
+    }
+
+    private static StringBuilder obtainBuilder()
+    {
+        StringBuilder builder = sBuilder.get();
+
+        //already in use further up this threads stack, i.e. an args toString() is logging
+        if (builder.length() != 0)
+            return new StringBuilder(BUILDER_INITIAL_CAPACITY);
+
+        return builder;
+    }
+
+    private static void releaseBuilder(StringBuilder builder)
+    {
+        if (builder.capacity() > BUILDER_MAX_RETAINED_CAPACITY)
+            sBuilder.set(new StringBuilder(BUILDER_INITIAL_CAPACITY));
+        else
+            builder.setLength(0);
+    }
+
+    private static void println(int priority, String tag, String message)
+    {
+        if (sLogcat)
+            Log.println(priority, tag, message);
+
+        Sink sink = sSink;
+        if (null != sink)
+            sink.log(priority, tag, message);
+    }
+
+    /**
+     * @return true if the text has to be built i.e. for logcat or a {@link Sink}
+     */
+    private static boolean isTextNeeded()
+    {
+        return sLogcat || null != sSink;
+    }
+
+    /**
+     * Resolves the tag and applies any call site limit, logging a summary line first if earlier calls were suppressed
+     *
+     * @param tag if null the callers class name is used
+     * @param limit if not null the call has already been allowed by it
+     * @return the tag to log with or null if the call is filtered out by its tags level or its call sites limit
+     */
+    private static String begin(int priority, String tag, CallSite site, Limit limit)
+    {
+        tag = resolveTag(priority, tag, site);
+        if (null == tag)
+            return null;
+
+        Limit siteLimit = null == site ? null : site.getLimit();
+        if (null != siteLimit)
+        {
+            if (!siteLimit.allow())
+                return null;
+
+            logSuppressed(priority, tag, site, siteLimit);
+        }
+
+        if (null != limit)
+            logSuppressed(priority, tag, site, limit);
+
+        return tag;
+    }
+
+    private static void logSuppressed(int priority, String tag, CallSite site, Limit limit)
+    {
+        long suppressed = limit.takeSuppressedCount();
+        if (suppressed == 0)
+            return;
+
+        emit(priority, tag, site, String.format(Locale.US, "suppressed %,d similar messages", suppressed));
+    }
+
+    /**
+     * @param tag if null the callers class name is used
+     * @return the tag to log with or null if the call is filtered out by its tags level
+     */
+    private static String resolveTag(int priority, String tag, CallSite site)
+    {
+        if (null == tag)
+            tag = null == site ? DEFAULT_TAG : site.tag;
+
+        return levelFor(priority) > getLevel(tag) ? null : tag;
+    }
+
+    /**
+     * @return null if caller info is off
+     */
+    private static CallSite getCallSite()
+    {
+        if (!sCallerInfo)
+            return null;
+
+        return getCallSite(new Throwable().getStackTrace()[CALLER_DEPTH]);
+    }
+
+    /**
+     * The stack capture itself cannot be avoided - there is no way to get a single frame on android - but the strings
+     * built from it are cached per call site
+     */
+    private static CallSite getCallSite(StackTraceElement caller)
+    {
+        CallSite site = sCallSites.get(caller);
+        if (null == site)
+        {
+            if (sCallSites.size() >= MAX_CALL_SITES)
+                sCallSites.clear();
+
+            //racing threads may both build it, which is harmless
+            site = new CallSite(caller);
+            sCallSites.put(caller, site);
+        }
+        return site;
+    }
+
+    /**
+     * Appends the "Class: method() [line] - " prefix, or nothing if site is null
+     */
+    private static void appendTrace(StringBuilder builder, CallSite site)
+    {
+        if (null != site)
+            builder.append(site.prefix);
+    }
+
+    private static int levelFor(int priority)
+    {
+        switch (priority)
+        {
+            case Log.ERROR:
+                return ERRORS_ONLY;
+            case Log.WARN:
+                return ERRORS_WARNINGS;
+            case Log.INFO:
+                return ERRORS_WARNINGS_INFO;
+            case Log.DEBUG:
+                return ERRORS_WARNINGS_INFO_DEBUG;
+            default:
+                return ALL;
+        }
+    }
+
+    /**
+     * {@link #getCallSite()} for public methods that call it themselves rather than through log()
+     */
+    private static CallSite getDirectCallSite()
+    {
+        if (!sCallerInfo)
+            return null;
+
+        return getCallSite(new Throwable().getStackTrace()[CALLER_DEPTH - 1]);
+    }
+
+    /**
+     * Sends already built text to the event sink, logcat and the sink, for calls that have been through {@link #begin}
+     */
+    private static void emit(int priority, String tag, CallSite site, String text)
+    {
+        EventSink eventSink = sEventSink;
+        if (null != eventSink)
+            eventSink.logEvent(priority, tag, null == site ? null : site.caller, null, new Object[]{text});
+
+        if (isTextNeeded())
+            println(priority, tag, null == site ? text : site.prefix + text);
+    }
+
+    private static class CallSite
+    {
+        final StackTraceElement caller;
+        final String tag;
+        final String prefix;
+        private volatile Limit mLimit;
+
+        CallSite(StackTraceElement caller)
+        {
+            String callerClassPath = caller.getClassName();
+            String callerClassName = callerClassPath.substring(callerClassPath.lastIndexOf('.') + 1);
+
+            this.caller = caller;
+            this.tag = callerClassName;
+            this.prefix = callerClassName + ": " + caller.getMethodName() + "() [" + caller.getLineNumber() + "] - ";
+        }
+
+        /**
+         * @return null if there is no call site limit
+         */
+        Limit getLimit()
+        {
+            int maxPerSecond = sCallSiteMaxPerSecond;
+            if (maxPerSecond <= 0)
+                return null;
+
+            Limit limit = mLimit;
+            if (null == limit || limit.mMaxPerSecond != maxPerSecond)
+            {
+                //racing threads may both replace it, which only loses a few counts
+                limit = Limit.perSecond(maxPerSecond);
+                mLimit = limit;
+            }
+            return limit;
+        }
     }
 
     public static class Trace
@@ -174,4 +1248,4 @@ public class XLog
             this.clazz = clazz;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,333 @@
+package com.doridori.lib.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link XLog.EventSink} that writes a compact binary log, off the calling thread. Set with
+ * {@link XLog#setEventSink(XLog.EventSink)}, and turn off {@link XLog#setLogcatEnabled(boolean)} in release builds so
+ * calls are never formatted on the device. Decode pulled files with {@link XLogDecoder}. See {@link AbsLogFileSink} for
+ * how events are buffered, dropped and rotated.
+ *
+ * Instead of repeating "Class: method() [line] - " and the format on every line, each call site (tag, caller and
+ * format) is written once per file as a dictionary entry, and each event after that is just the site id, a time delta,
+ * the thread, the priority and the args. Numbers are varints, so a typical event is well under 20 bytes.
+ *
+ * Format (all ints are unsigned LEB128 varints, signed ones zigzag encoded first):
+ * <pre>
+ * file    = "XLOG" version(byte) record*      header only written to an empty file
+ * record  = TIME    time(varint)               absolute ms, resets the delta base. Written whenever a file is opened
+ *         | SITE    id tag? class? method? line(zigzag) format?
+ *         | EVENT   siteId delta(zigzag) threadId priority(byte) argCount arg*
+ *         | DROPPED delta(zigzag) count
+ * string? = 0 for null or length + 1 then utf-8 bytes
+ * arg     = NULL | LONG value(zigzag) | DOUBLE 8 bytes | STRING string? | TRUE | FALSE
+ * </pre>
+ * Site ids start again from 0 when a file is opened (including appending to an existing one after a restart), so a
+ * later SITE with the same id replaces the earlier one. Before appending, a record torn by a crash at the end of the
+ * file is cut off, so the new records are not read as part of it.
+ *
+ * Floats are written as the DOUBLE with the same decimal form, so 1.1f decodes as 1.1 not 1.100000023841858.
+ *
+ * Non primitive, non String args are converted with String.valueOf() on the logging thread, so the text is as it was
+ * when logged.
+ *
+ * @author dorian cussen
+ */
+public class XLogBinarySink extends AbsLogFileSink implements XLog.EventSink
+{
+    //============================================================================================================
+    // FORMAT
+    //============================================================================================================
+
+    static final int VERSION = 1;
+    static final byte[] HEADER = {'X', 'L', 'O', 'G', VERSION};
+
+    static final int RECORD_TIME = 1;
+    static final int RECORD_SITE = 2;
+    static final int RECORD_EVENT = 3;
+    static final int RECORD_DROPPED = 4;
+
+    static final int ARG_NULL = 0;
+    static final int ARG_LONG = 1;
+    static final int ARG_DOUBLE = 2;
+    static final int ARG_STRING = 3;
+    static final int ARG_TRUE = 4;
+    static final int ARG_FALSE = 5;
+
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    //writer thread only
+    private final Map<SiteKey, Integer> mSites = new HashMap<SiteKey, Integer>();
+    private long mLastTimeMs;
+    private byte[] mRecord = new byte[256];
+    private int mRecordLength;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    /**
+     * @param dir created if it does not exist
+     * @param baseName file name without extension, files are baseName.xlog, baseName.1.xlog etc.
+     * @param capacity max events waiting to be written, rounded up to a power of 2
+     */
+    public XLogBinarySink(@NotNull File dir, @NotNull String baseName, int capacity)
+    {
+        super(dir, baseName, ".xlog", capacity);
+    }
+
+    //============================================================================================================
+    // SINK
+    //============================================================================================================
+
+    /**
+     * Called by XLog on the logging thread
+     */
+    @Override
+    public void logEvent(int priority, String tag, StackTraceElement caller, String format, Object[] args)
+    {
+        Object[] snapshot = new Object[args.length];
+        for (int i = 0; i < args.length; i++)
+        {
+            Object arg = args[i];
+            snapshot[i] = isImmutable(arg) ? arg : String.valueOf(arg);
+        }
+
+        offer(priority, tag, null, caller, format, snapshot);
+    }
+
+    private static boolean isImmutable(Object arg)
+    {
+        return null == arg ||
+                arg instanceof String ||
+                arg instanceof Long ||
+                arg instanceof Integer ||
+                arg instanceof Short ||
+                arg instanceof Byte ||
+                arg instanceof Double ||
+                arg instanceof Float ||
+                arg instanceof Boolean;
+    }
+
+    //============================================================================================================
+    // ENCODING
+    //============================================================================================================
+
+    @Override
+    protected long getAppendableLength(@NotNull File file) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try
+        {
+            return XLogDecoder.readableLength(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Override
+    protected void onFileOpened() throws IOException
+    {
+        mSites.clear();
+
+        if (getFileBytes() == 0)
+            write(HEADER, 0, HEADER.length);
+
+        mLastTimeMs = System.currentTimeMillis();
+        startRecord(RECORD_TIME);
+        writeVarint(mLastTimeMs);
+        endRecord();
+    }
+
+    @Override
+    protected void writeEntry(@NotNull Entry entry) throws IOException
+    {
+        SiteKey key = new SiteKey(entry.tag, entry.caller, entry.format);
+        Integer siteId = mSites.get(key);
+        if (null == siteId)
+        {
+            siteId = mSites.size();
+            mSites.put(key, siteId);
+
+            startRecord(RECORD_SITE);
+            writeVarint(siteId);
+            writeString(entry.tag);
+            writeString(null == entry.caller ? null : entry.caller.getClassName());
+            writeString(null == entry.caller ? null : entry.caller.getMethodName());
+            writeVarint(zigzag(null == entry.caller ? -1 : entry.caller.getLineNumber()));
+            writeString(entry.format);
+            endRecord();
+        }
+
+        startRecord(RECORD_EVENT);
+        writeVarint(siteId);
+        writeVarint(zigzag(entry.timeMs - mLastTimeMs));
+        writeVarint(entry.threadId);
+        writeByte(entry.priority);
+        writeVarint(entry.args.length);
+        for (Object arg : entry.args)
+            writeArg(arg);
+        endRecord();
+
+        mLastTimeMs = entry.timeMs;
+    }
+
+    @Override
+    protected void writeDropped(long timeMs, long count) throws IOException
+    {
+        startRecord(RECORD_DROPPED);
+        writeVarint(zigzag(timeMs - mLastTimeMs));
+        writeVarint(count);
+        endRecord();
+
+        mLastTimeMs = timeMs;
+    }
+
+    private void writeArg(Object arg) throws IOException
+    {
+        if (null == arg)
+        {
+            writeByte(ARG_NULL);
+        }
+        else if (arg instanceof Double || arg instanceof Float)
+        {
+            writeByte(ARG_DOUBLE);
+            //a widened float prints all its binary noise, the double of its shortest decimal form prints the same as it
+            double value = arg instanceof Float ? Double.parseDouble(arg.toString()) : (Double) arg;
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                writeByte((int) (bits >>> shift));
+        }
+        else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte)
+        {
+            writeByte(ARG_LONG);
+            writeVarint(zigzag(((Number) arg).longValue()));
+        }
+        else if (arg instanceof Boolean)
+        {
+            writeByte((Boolean) arg ? ARG_TRUE : ARG_FALSE);
+        }
+        else
+        {
+            //strings, anything else was converted to a string in logEvent()
+            writeByte(ARG_STRING);
+            writeString(arg.toString());
+        }
+    }
+
+    //============================================================================================================
+    // RECORD BUFFER
+    //============================================================================================================
+
+    private void startRecord(int type)
+    {
+        mRecordLength = 0;
+        writeByte(type);
+    }
+
+    private void endRecord() throws IOException
+    {
+        write(mRecord, 0, mRecordLength);
+    }
+
+    private void writeByte(int b)
+    {
+        if (mRecordLength == mRecord.length)
+        {
+            byte[] bigger = new byte[mRecord.length * 2];
+            System.arraycopy(mRecord, 0, bigger, 0, mRecordLength);
+            mRecord = bigger;
+        }
+        mRecord[mRecordLength++] = (byte) b;
+    }
+
+    private void writeVarint(long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private void writeString(String string) throws IOException
+    {
+        if (null == string)
+        {
+            writeVarint(0);
+            return;
+        }
+
+        byte[] bytes = string.getBytes("UTF-8");
+        writeVarint(bytes.length + 1);
+        for (byte b : bytes)
+            writeByte(b);
+    }
+
+    static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Dictionary key for a call site. Uses the StackTraceElements equals() i.e. class, method, file and line
+     */
+    private static class SiteKey
+    {
+        private final String mTag;
+        private final StackTraceElement mCaller;
+        private final String mFormat;
+        private final int mHash;
+
+        private SiteKey(String tag, StackTraceElement caller, String format)
+        {
+            mTag = tag;
+            mCaller = caller;
+            mFormat = format;
+
+            int hash = null == tag ? 0 : tag.hashCode();
+            hash = 31 * hash + (null == caller ? 0 : caller.hashCode());
+            hash = 31 * hash + (null == format ? 0 : format.hashCode());
+            mHash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof SiteKey))
+                return false;
+
+            SiteKey other = (SiteKey) o;
+            return mHash == other.mHash &&
+                    equal(mTag, other.mTag) &&
+                    equal(mCaller, other.mCaller) &&
+                    equal(mFormat, other.mFormat);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return mHash;
+        }
+
+        private static boolean equal(Object a, Object b)
+        {
+            return null == a ? null == b : a.equals(b);
+        }
+    }
+}
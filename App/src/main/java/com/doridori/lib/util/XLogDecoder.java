@@ -0,0 +1,392 @@
+package com.doridori.lib.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns files written by {@link XLogBinarySink} back into the same text lines {@link XLogFileSink} writes. Plain java
+ * (no android classes) so it can be run on a desktop against pulled files:
+ *
+ * <pre>
+ * java -cp lib.jar com.doridori.lib.util.XLogDecoder app.2.xlog app.1.xlog app.xlog > app.txt
+ * </pre>
+ *
+ * @author dorian cussen
+ */
+public class XLogDecoder
+{
+    //============================================================================================================
+    // FIELDS
+    //============================================================================================================
+
+    /**
+     * Only compile time constants are used from XLogBinarySink, so it (and the android classes it uses) are never
+     * loaded
+     */
+    private static final byte[] HEADER = {'X', 'L', 'O', 'G', XLogBinarySink.VERSION};
+    private static final String DROPPED_TAG = "XLogBinarySink";
+    private static final String PLACEHOLDER = "{}";
+    private static final String PRIORITY_CHARS = "??VDIWEA";
+
+    private final DataInputStream mIn;
+    private final Map<Integer, Site> mSites = new HashMap<Integer, Site>();
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+    private final StringBuilder mLine = new StringBuilder(256);
+    private long mTimeMs;
+
+    //============================================================================================================
+    // CONSTRUCTOR
+    //============================================================================================================
+
+    private XLogDecoder(InputStream in)
+    {
+        mIn = new DataInputStream(in);
+    }
+
+    //============================================================================================================
+    // PUBLIC
+    //============================================================================================================
+
+    /**
+     * Decodes the files in the order given, to stdout
+     */
+    public static void main(String[] args) throws IOException
+    {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+        try
+        {
+            for (String path : args)
+                decode(new File(path), out);
+        }
+        finally
+        {
+            out.flush();
+        }
+    }
+
+    public static void decode(@NotNull File file, @NotNull Writer out) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try
+        {
+            decode(in, out);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in not closed
+     * @throws IOException if in is not an XLog binary file. A truncated final record (from a crash mid write) is ignored
+     */
+    public static void decode(@NotNull InputStream in, @NotNull Writer out) throws IOException
+    {
+        new XLogDecoder(in).decode(out);
+    }
+
+    /**
+     * Used by {@link XLogBinarySink} before appending to a file from an earlier run
+     *
+     * @param in not closed
+     * @return bytes taken by the header and the complete records that follow it, i.e. where a torn or garbled record
+     *         starts. 0 if even the header is incomplete, -1 if it is not an XLog binary file of this version
+     */
+    static long readableLength(@NotNull InputStream in) throws IOException
+    {
+        CountingInputStream counting = new CountingInputStream(in);
+        XLogDecoder decoder = new XLogDecoder(counting);
+        try
+        {
+            if (!decoder.readHeader())
+                return -1;
+        }
+        catch (EOFException e)
+        {
+            return 0;
+        }
+
+        while (true)
+        {
+            long recordStart = counting.mCount;
+            int type = decoder.mIn.read();
+            if (type == -1)
+                return recordStart;
+
+            try
+            {
+                decoder.decodeRecord(type, null);
+            }
+            catch (IOException e)
+            {
+                //truncated (EOFException) or not a record
+                return recordStart;
+            }
+        }
+    }
+
+    //============================================================================================================
+    // DECODING
+    //============================================================================================================
+
+    private boolean readHeader() throws IOException
+    {
+        byte[] header = new byte[HEADER.length];
+        mIn.readFully(header);
+        for (int i = 0; i < header.length; i++)
+        {
+            if (header[i] != HEADER[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void decode(Writer out) throws IOException
+    {
+        if (!readHeader())
+            throw new IOException("Not an XLog binary file or unsupported version");
+
+        while (true)
+        {
+            int type = mIn.read();
+            if (type == -1)
+                return;
+
+            try
+            {
+                decodeRecord(type, out);
+            }
+            catch (EOFException e)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param out null to only check the record can be read
+     */
+    private void decodeRecord(int type, Writer out) throws IOException
+    {
+        switch (type)
+        {
+            case XLogBinarySink.RECORD_TIME:
+                mTimeMs = readVarint();
+                break;
+
+            case XLogBinarySink.RECORD_SITE:
+                int id = (int) readVarint();
+                Site site = new Site();
+                site.tag = readString();
+                site.className = readString();
+                site.methodName = readString();
+                site.line = (int) unzigzag(readVarint());
+                site.format = readString();
+                mSites.put(id, site);
+                break;
+
+            case XLogBinarySink.RECORD_EVENT:
+                decodeEvent(out);
+                break;
+
+            case XLogBinarySink.RECORD_DROPPED:
+                mTimeMs += unzigzag(readVarint());
+                long count = readVarint();
+                if (null == out)
+                    break;
+                startLine(0, 'W', DROPPED_TAG);
+                mLine.append(count).append(" log events dropped, writer could not keep up");
+                endLine(out);
+                break;
+
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private void decodeEvent(Writer out) throws IOException
+    {
+        int siteId = (int) readVarint();
+        mTimeMs += unzigzag(readVarint());
+        long threadId = readVarint();
+        int priority = mIn.readUnsignedByte();
+        int argCount = (int) readVarint();
+
+        Object[] args = new Object[argCount];
+        for (int i = 0; i < argCount; i++)
+            args[i] = readArg();
+
+        Site site = mSites.get(siteId);
+        if (null == site)
+            throw new IOException("Event for undefined site " + siteId);
+        if (null == out)
+            return;
+
+        char priorityChar = priority < PRIORITY_CHARS.length() ? PRIORITY_CHARS.charAt(priority) : '?';
+        startLine(threadId, priorityChar, site.tag);
+
+        if (null != site.className)
+        {
+            mLine.append(site.className, site.className.lastIndexOf('.') + 1, site.className.length());
+            mLine.append(": ").append(site.methodName).append("() [").append(site.line).append("] - ");
+        }
+
+        if (null == site.format)
+        {
+            //plain text call
+            if (argCount > 0)
+                mLine.append(args[0]);
+        }
+        else
+        {
+            appendFormatted(site.format, args);
+        }
+
+        endLine(out);
+    }
+
+    private Object readArg() throws IOException
+    {
+        int type = mIn.readUnsignedByte();
+        switch (type)
+        {
+            case XLogBinarySink.ARG_NULL:
+                return null;
+            case XLogBinarySink.ARG_LONG:
+                return unzigzag(readVarint());
+            case XLogBinarySink.ARG_DOUBLE:
+                return mIn.readDouble();
+            case XLogBinarySink.ARG_STRING:
+                return readString();
+            case XLogBinarySink.ARG_TRUE:
+                return Boolean.TRUE;
+            case XLogBinarySink.ARG_FALSE:
+                return Boolean.FALSE;
+            default:
+                throw new IOException("Unknown arg type " + type);
+        }
+    }
+
+    /**
+     * Same substitution as XLog
+     */
+    private void appendFormatted(String format, Object[] args)
+    {
+        int index = 0;
+        for (int i = 0; i < args.length; i++)
+        {
+            int placeholder = format.indexOf(PLACEHOLDER, index);
+            if (placeholder == -1)
+                break;
+
+            mLine.append(format, index, placeholder);
+            mLine.append(args[i]);
+            index = placeholder + PLACEHOLDER.length();
+        }
+        mLine.append(format, index, format.length());
+    }
+
+    private void startLine(long threadId, char priority, String tag)
+    {
+        mLine.setLength(0);
+        mLine.append(mDateFormat.format(new Date(mTimeMs)));
+        mLine.append(' ').append(threadId).append(' ').append(priority).append('/').append(tag).append(": ");
+    }
+
+    private void endLine(Writer out) throws IOException
+    {
+        mLine.append('\n');
+        out.write(mLine.toString());
+    }
+
+    private long readVarint() throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = mIn.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private String readString() throws IOException
+    {
+        int length = (int) readVarint();
+        if (length == 0)
+            return null;
+
+        byte[] bytes = new byte[length - 1];
+        mIn.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class CountingInputStream extends FilterInputStream
+    {
+        private long mCount;
+
+        private CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b != -1)
+                mCount++;
+            return b;
+        }
+
+        @Override
+        public int read(@NotNull byte[] buffer, int offset, int length) throws IOException
+        {
+            int read = super.read(buffer, offset, length);
+            if (read > 0)
+                mCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+
+    private static class Site
+    {
+        String tag;
+        String className;
+        String methodName;
+        int line;
+        String format;
+    }
+}
@@ -0,0 +1,102 @@
+package com.doridori.lib.util;
+
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * {@link XLog.Sink} that writes log lines to text files, off the calling thread. Set with
+ * {@link XLog#setSink(XLog.Sink)}. See {@link AbsLogFileSink} for how lines are buffered, dropped and rotated.
+ *
+ * <pre>
+ * XLogFileSink sink = new XLogFileSink(new File(context.getFilesDir(), "logs"), "app", 4096);
+ * sink.start();
+ * XLog.setSink(sink);
+ * </pre>
+ *
+ * @author dorian cussen
+ */
+public class XLogFileSink extends AbsLogFileSink implements XLog.Sink
+{
+    private static final String TAG = XLogFileSink.class.getSimpleName();
+
+    //writer thread only
+    private final StringBuilder mLine = new StringBuilder(256);
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+    private final Date mDate = new Date();
+
+    /**
+     * @param dir created if it does not exist
+     * @param baseName file name without extension, files are baseName.log, baseName.1.log etc.
+     * @param capacity max lines waiting to be written, rounded up to a power of 2
+     */
+    public XLogFileSink(@NotNull File dir, @NotNull String baseName, int capacity)
+    {
+        super(dir, baseName, ".log", capacity);
+    }
+
+    /**
+     * Called by XLog on the logging thread
+     */
+    @Override
+    public void log(int priority, @NotNull String tag, @NotNull String message)
+    {
+        offer(priority, tag, message, null, null, null);
+    }
+
+    @Override
+    protected void writeEntry(@NotNull Entry entry) throws IOException
+    {
+        writeLine(entry.timeMs, entry.threadId, entry.priority, entry.tag, entry.message);
+    }
+
+    @Override
+    protected void writeDropped(long timeMs, long count) throws IOException
+    {
+        writeLine(timeMs, Thread.currentThread().getId(), Log.WARN, TAG, count + " log events dropped, writer could not keep up");
+    }
+
+    private void writeLine(long timeMs, long threadId, int priority, String tag, String message) throws IOException
+    {
+        mDate.setTime(timeMs);
+        mLine.setLength(0);
+        mLine.append(mDateFormat.format(mDate));
+        mLine.append(' ');
+        mLine.append(threadId);
+        mLine.append(' ');
+        mLine.append(priorityChar(priority));
+        mLine.append('/');
+        mLine.append(tag);
+        mLine.append(": ");
+        mLine.append(message);
+        mLine.append('\n');
+
+        byte[] bytes = mLine.toString().getBytes("UTF-8");
+        write(bytes, 0, bytes.length);
+    }
+
+    static char priorityChar(int priority)
+    {
+        switch (priority)
+        {
+            case Log.VERBOSE:
+                return 'V';
+            case Log.DEBUG:
+                return 'D';
+            case Log.INFO:
+                return 'I';
+            case Log.WARN:
+                return 'W';
+            case Log.ERROR:
+                return 'E';
+            default:
+                return 'A';
+        }
+    }
+}
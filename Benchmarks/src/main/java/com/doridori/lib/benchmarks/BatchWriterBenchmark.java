@@ -0,0 +1,158 @@
+package com.doridori.lib.benchmarks;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.doridori.lib.db.utils.BatchWriter;
+import com.doridori.lib.db.utils.SQLiteDataTypes;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder;
+import com.doridori.lib.db.utils.SqlStatementCache;
+import com.doridori.lib.db.utils.SqlWriteStmtBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a sync sized set of rows to a file backed SQLite (sqlite-jdbc behind the SQLiteDatabase stub). adHocInsert
+ * is what SQLiteDatabase.insert(ContentValues) does per row: compile, bind, run and commit. The others go through
+ * {@link BatchWriter} with a cached statement, committing every chunkSize rows (0 = once)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchWriterBenchmark
+{
+    private static final int ROWS = 2000;
+
+    private static final SqlCreateStmtBuilder TABLE = new SqlCreateStmtBuilder("message")
+            .addCol("_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.PrimaryKey(true))
+            .addCol("server_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.Unique(null))
+            .addCol("sent_at", SQLiteDataTypes.INTEGER)
+            .addCol("score", SQLiteDataTypes.REAL)
+            .addCol("body", SQLiteDataTypes.TEXT);
+
+    private static final SqlWriteStmtBuilder WRITE = new SqlWriteStmtBuilder(TABLE);
+    private static final String INSERT = WRITE.buildInsert();
+    private static final String UPSERT = WRITE.buildUpsert("server_id");
+
+    private static final BatchWriter.RowBinder<Message> BINDER = new BatchWriter.RowBinder<Message>()
+    {
+        private final int mServerId = WRITE.getBindIndex("server_id");
+        private final int mSentAt = WRITE.getBindIndex("sent_at");
+        private final int mScore = WRITE.getBindIndex("score");
+        private final int mBody = WRITE.getBindIndex("body");
+
+        @Override
+        public void bind(SQLiteStatement statement, Message row)
+        {
+            statement.bindLong(mServerId, row.serverId);
+            statement.bindLong(mSentAt, row.sentAt);
+            statement.bindDouble(mScore, row.score);
+            statement.bindString(mBody, row.body);
+        }
+    };
+
+    @State(Scope.Thread)
+    public static class Chunking
+    {
+        @Param({"1", "100", "0"})
+        public int chunkSize;
+    }
+
+    private File mFile;
+    private SQLiteDatabase mDb;
+    private SqlStatementCache mCache;
+    private List<Message> mRows;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mFile = File.createTempFile("batch", ".db");
+        mDb = SQLiteDatabase.openOrCreateDatabase(mFile, null);
+        mDb.execSQL(TABLE.build());
+        mCache = new SqlStatementCache(mDb);
+
+        mRows = new ArrayList<Message>(ROWS);
+        for (int i = 0; i < ROWS; i++)
+            mRows.add(new Message(i, 1400000000000L + i, i / 7d, "message body " + i));
+    }
+
+    @Setup(Level.Invocation)
+    public void clear()
+    {
+        mDb.execSQL("DELETE FROM message");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mCache.close();
+        mDb.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public int adHocInsert()
+    {
+        for (Message row : mRows)
+        {
+            SQLiteStatement statement = mDb.compileStatement(INSERT);
+            BINDER.bind(statement, row);
+            statement.execute();
+            statement.close();
+        }
+        return mRows.size();
+    }
+
+    @Benchmark
+    public int batchInsert(Chunking chunking)
+    {
+        return new BatchWriter<Message>(mCache, INSERT, BINDER).setChunkSize(chunking.chunkSize).write(mRows);
+    }
+
+    /**
+     * Writes every row twice, the second pass updating in place
+     */
+    @Benchmark
+    public int batchUpsert(Chunking chunking)
+    {
+        BatchWriter<Message> writer = new BatchWriter<Message>(mCache, UPSERT, BINDER).setChunkSize(chunking.chunkSize);
+        return writer.write(mRows) + writer.write(mRows);
+    }
+
+    static class Message
+    {
+        final long serverId;
+        final long sentAt;
+        final double score;
+        final String body;
+
+        Message(long serverId, long sentAt, double score, String body)
+        {
+            this.serverId = serverId;
+            this.sentAt = sentAt;
+            this.score = score;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.util.ByteArrayUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * xor / merge over key sized (32B), page sized (4KB) and key derivation buffer sized (1MB) inputs. The legacy
+ * benchmarks run the old sort then xor, kept here to compare against the in place one
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteArrayUtilsBenchmark
+{
+    @Param({"32", "4096", "1048576"})
+    public int size;
+
+    private byte[] mA;
+    private byte[] mB;
+    private byte[] mC;
+    private byte[] mDst;
+    private String mHex;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        mA = new byte[size];
+        mB = new byte[size];
+        //uneven lengths so the size sort does some work
+        mC = new byte[size / 2];
+        random.nextBytes(mA);
+        random.nextBytes(mB);
+        random.nextBytes(mC);
+        mDst = new byte[size];
+
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < Math.min(size, 4096); i++)
+            hex.append(String.format("%02x", mA[i]));
+        mHex = hex.toString();
+    }
+
+    @Benchmark
+    public byte[] xorTwo()
+    {
+        return ByteArrayUtils.xor(mA, mB);
+    }
+
+    @Benchmark
+    public byte[] xorThree()
+    {
+        return ByteArrayUtils.xor(mC, mA, mB);
+    }
+
+    @Benchmark
+    public byte[] xorTwoLegacy()
+    {
+        return legacyXor(mA, mB);
+    }
+
+    @Benchmark
+    public byte[] xorThreeLegacy()
+    {
+        return legacyXor(mC, mA, mB);
+    }
+
+    /**
+     * In place into a reused buffer, as a key derivation loop would. The buffer is not reset between calls, which
+     * makes no difference to the cost
+     */
+    @Benchmark
+    public byte[] xorIntoThree()
+    {
+        ByteArrayUtils.xorInto(mDst, mA, mB, mC);
+        return mDst;
+    }
+
+    @Benchmark
+    public byte[] merge()
+    {
+        return ByteArrayUtils.merge(mA, mB, mC);
+    }
+
+    /**
+     * Capped at 4KB of bytes (8K chars) - hex strings are not used for large payloads
+     */
+    @Benchmark
+    public byte[] hexStringToByteArray()
+    {
+        return ByteArrayUtils.hexStringToByteArray(mHex);
+    }
+
+    /**
+     * ByteArrayUtils.xor() before it went in place without sorting
+     */
+    private static byte[] legacyXor(byte[]... arrays)
+    {
+        Arrays.sort(arrays, new Comparator<byte[]>()
+        {
+            @Override
+            public int compare(byte[] lhs, byte[] rhs)
+            {
+                return rhs.length - lhs.length;
+            }
+        });
+
+        byte[] result = new byte[arrays[0].length];
+        for (byte[] array : arrays)
+        {
+            for (int i = 0; i < array.length; i++)
+                result[i] ^= array[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,166 @@
+package com.doridori.lib.benchmarks;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.doridori.lib.db.utils.CursorColumns;
+import com.doridori.lib.db.utils.SQLiteDataTypes;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping a whole result set to model objects. getColumnIndexPerRow is the usual hand written mapper,
+ * contentValuesPerRow copies each row into a map of boxed values (as DatabaseUtils.cursorRowToContentValues() does),
+ * the others go through {@link CursorColumns}. The cursor is an in memory stub, so this measures the mapping, not
+ * SQLite
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CursorColumnsBenchmark
+{
+    private static final SqlCreateStmtBuilder TABLE = new SqlCreateStmtBuilder("message")
+            .addCol("_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.PrimaryKey(true))
+            .addCol("conversation_id", SQLiteDataTypes.INTEGER)
+            .addCol("sent_at", SQLiteDataTypes.INTEGER)
+            .addCol("unread", SQLiteDataTypes.INTEGER)
+            .addCol("score", SQLiteDataTypes.REAL)
+            .addCol("sender", SQLiteDataTypes.TEXT)
+            .addCol("body", SQLiteDataTypes.TEXT);
+
+    private static final CursorColumns COLS = new CursorColumns(TABLE);
+    private static final int ID = COLS.indexOf("_id");
+    private static final int CONVERSATION_ID = COLS.indexOf("conversation_id");
+    private static final int SENT_AT = COLS.indexOf("sent_at");
+    private static final int UNREAD = COLS.indexOf("unread");
+    private static final int SCORE = COLS.indexOf("score");
+    private static final int SENDER = COLS.indexOf("sender");
+    private static final int BODY = COLS.indexOf("body");
+
+    private static final CursorColumns.RowMapper<Message> MAPPER = new CursorColumns.RowMapper<Message>()
+    {
+        @Override
+        public Message map(CursorColumns.Row row)
+        {
+            return new Message(row.getLong(ID), row.getLong(CONVERSATION_ID), row.getLong(SENT_AT),
+                    row.getBoolean(UNREAD), row.getDouble(SCORE), row.getString(SENDER), row.getString(BODY));
+        }
+    };
+
+    private static final CursorColumns.RowMapper<CursorColumns.TypedRow> TYPED_MAPPER = COLS.typedRowMapper();
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private MatrixCursor mCursor;
+
+    @Setup
+    public void setUp()
+    {
+        String[] names = new String[TABLE.getCols().size()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = TABLE.getCols().get(i).name;
+
+        mCursor = new MatrixCursor(names, rows);
+        for (int i = 0; i < rows; i++)
+            mCursor.addRow(new Object[]{(long) i, (long) (i % 100), 1400000000000L + i, (long) (i % 2), i / 3d, "sender" + (i % 20), "message body " + i});
+    }
+
+    @Benchmark
+    public List<Message> getColumnIndexPerRow()
+    {
+        Cursor cursor = mCursor;
+        List<Message> messages = new ArrayList<Message>(cursor.getCount());
+
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext())
+        {
+            messages.add(new Message(
+                    cursor.getLong(cursor.getColumnIndex("_id")),
+                    cursor.getLong(cursor.getColumnIndex("conversation_id")),
+                    cursor.getLong(cursor.getColumnIndex("sent_at")),
+                    cursor.getInt(cursor.getColumnIndex("unread")) != 0,
+                    cursor.getDouble(cursor.getColumnIndex("score")),
+                    cursor.getString(cursor.getColumnIndex("sender")),
+                    cursor.getString(cursor.getColumnIndex("body"))));
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> contentValuesPerRow()
+    {
+        Cursor cursor = mCursor;
+        String[] names = cursor.getColumnNames();
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(cursor.getCount());
+
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext())
+        {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put(names[0], cursor.getLong(0));
+            values.put(names[1], cursor.getLong(1));
+            values.put(names[2], cursor.getLong(2));
+            values.put(names[3], cursor.getLong(3));
+            values.put(names[4], cursor.getDouble(4));
+            values.put(names[5], cursor.getString(5));
+            values.put(names[6], cursor.getString(6));
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public List<Message> cursorColumnsMapper()
+    {
+        return COLS.mapAll(mCursor, MAPPER);
+    }
+
+    @Benchmark
+    public List<CursorColumns.TypedRow> typedRowMapper()
+    {
+        return COLS.mapAll(mCursor, TYPED_MAPPER);
+    }
+
+    static class Message
+    {
+        final long id;
+        final long conversationId;
+        final long sentAt;
+        final boolean unread;
+        final double score;
+        final String sender;
+        final String body;
+
+        Message(long id, long conversationId, long sentAt, boolean unread, double score, String sender, String body)
+        {
+            this.id = id;
+            this.conversationId = conversationId;
+            this.sentAt = sentAt;
+            this.unread = unread;
+            this.score = score;
+            this.sender = sender;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.util.DateUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ISO8601 formatting / parsing, as done per item when binding api responses
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUtilsBenchmark
+{
+    private Calendar mCalendar;
+
+    @Setup
+    public void setUp()
+    {
+        mCalendar = new GregorianCalendar(TimeZone.getTimeZone("Europe/London"));
+        mCalendar.setTimeInMillis(1404000000000L);
+    }
+
+    @Benchmark
+    public String fromCalendar()
+    {
+        return DateUtils.ISO8601.fromCalendar(mCalendar);
+    }
+
+    /**
+     * Uses a +0100 offset as the JVMs SimpleDateFormat will not parse +01:00 (or the Z form, which is rewritten to
+     * +00:00) - android's does
+     */
+    @Benchmark
+    public Calendar toCalendarOffset() throws ParseException
+    {
+        return DateUtils.ISO8601.toCalendar("2014-06-29T01:00:00.000+0100");
+    }
+}
@@ -0,0 +1,110 @@
+package com.doridori.lib.benchmarks;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.doridori.lib.view.GroupedListAdapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Position lookups, as done for every getView() call while scrolling. Looks up the first, middle and last rows so the
+ * linear walk over groups shows up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupedListAdapterBenchmark
+{
+    @Param({"10", "200"})
+    public int groups;
+
+    private static final int CHILDREN_PER_GROUP = 20;
+
+    private GroupedListAdapter mAdapter;
+    private int mCount;
+
+    @Setup
+    public void setUp()
+    {
+        final int groupCount = groups;
+        mAdapter = new GroupedListAdapter()
+        {
+            @Override
+            protected int getGroupCount()
+            {
+                return groupCount;
+            }
+
+            @Override
+            protected int getGroupSize(int position)
+            {
+                return CHILDREN_PER_GROUP;
+            }
+
+            @Override
+            protected View getGroupView(int groupPosition, View convertView, ViewGroup parent)
+            {
+                return convertView;
+            }
+
+            @Override
+            protected View getChildView(int groupPosition, int childPosition, View convertView, ViewGroup parent)
+            {
+                return convertView;
+            }
+
+            @Override
+            protected int getGroupViewId()
+            {
+                return 1;
+            }
+
+            @Override
+            protected int getChildViewId()
+            {
+                return 2;
+            }
+        };
+        mCount = mAdapter.getCount();
+    }
+
+    @Benchmark
+    public GroupedListAdapter.GroupedPosition first()
+    {
+        return mAdapter.getGroupAndChildPosition(0);
+    }
+
+    @Benchmark
+    public GroupedListAdapter.GroupedPosition middle()
+    {
+        return mAdapter.getGroupAndChildPosition(mCount / 2);
+    }
+
+    @Benchmark
+    public GroupedListAdapter.GroupedPosition last()
+    {
+        return mAdapter.getGroupAndChildPosition(mCount - 1);
+    }
+
+    @Benchmark
+    public int getCount()
+    {
+        return mAdapter.getCount();
+    }
+}
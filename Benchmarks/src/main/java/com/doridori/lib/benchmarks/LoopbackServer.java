@@ -0,0 +1,140 @@
+package com.doridori.lib.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server on 127.0.0.1, one thread per socket, answering every request with {@link #BODY}.
+ * Used by HttpClientBenchmark and HttpClientTest
+ */
+class LoopbackServer
+{
+    static final byte[] BODY = new byte[4096];
+
+    private final ServerSocket mServerSocket;
+    private final boolean mCloseEachResponse;
+    private final AtomicInteger mAccepted = new AtomicInteger();
+    volatile int mStatus = 200;
+
+    LoopbackServer(boolean closeEachResponse) throws IOException
+    {
+        mCloseEachResponse = closeEachResponse;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread acceptor = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                accept();
+            }
+        }, "LoopbackServer accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    URL url(String path) throws IOException
+    {
+        return new URL("http://127.0.0.1:" + mServerSocket.getLocalPort() + path);
+    }
+
+    int getAcceptedCount()
+    {
+        return mAccepted.get();
+    }
+
+    void close() throws IOException
+    {
+        mServerSocket.close();
+    }
+
+    private void accept()
+    {
+        while (!mServerSocket.isClosed())
+        {
+            try
+            {
+                final Socket socket = mServerSocket.accept();
+                mAccepted.incrementAndGet();
+
+                Thread handler = new Thread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        serve(socket);
+                    }
+                }, "LoopbackServer socket");
+                handler.setDaemon(true);
+                handler.start();
+            }
+            catch (IOException e)
+            {
+                //closed
+            }
+        }
+    }
+
+    private void serve(Socket socket)
+    {
+        try
+        {
+            //otherwise each response can wait on a delayed ack
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            //GETs only, so no request body to read
+            while (null != readLine(in))
+            {
+                String line;
+                while (null != (line = readLine(in)) && line.length() > 0)
+                {
+                    //skip headers
+                }
+
+                int status = mStatus;
+                String head = "HTTP/1.1 " + status + (status == 200 ? " OK" : " Error") + "\r\n" +
+                        "Content-Type: application/octet-stream\r\n" +
+                        "Content-Length: " + BODY.length + "\r\n" +
+                        (mCloseEachResponse ? "Connection: close\r\n" : "") +
+                        "\r\n";
+                byte[] headBytes = head.getBytes("US-ASCII");
+                byte[] response = Arrays.copyOf(headBytes, headBytes.length + BODY.length);
+                System.arraycopy(BODY, 0, response, headBytes.length, BODY.length);
+                out.write(response);
+                out.flush();
+
+                if (mCloseEachResponse)
+                    break;
+            }
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            //client went away
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1)
+        {
+            if (b == '\n')
+                return line.toString();
+            if (b != '\r')
+                line.append((char) b);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+}
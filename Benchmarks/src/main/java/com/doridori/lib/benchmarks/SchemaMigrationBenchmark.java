@@ -0,0 +1,221 @@
+package com.doridori.lib.benchmarks;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.doridori.lib.db.utils.DbSchema;
+import com.doridori.lib.db.utils.SQLiteDataTypes;
+import com.doridori.lib.db.utils.SchemaMigration;
+import com.doridori.lib.db.utils.SqlCreateIndexBuilder;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running {@link SchemaMigration} plans against a populated in memory SQLite (sqlite-jdbc behind the SQLiteDatabase
+ * stub): an added col (ALTER TABLE), a changed col (table rebuild) and a changed index. Setup first runs each plan on
+ * a fresh database and fails unless the rows, the new cols defaults and the indexes are as expected, and unless a NOT
+ * NULL col without a default is rejected at plan time, so a planner change that produces an upgrade SQLite can not run
+ * fails the run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaMigrationBenchmark
+{
+    private static final int ROWS = 10000;
+
+    private static final DbSchema V1 = new DbSchema()
+            .addTable(msgTable())
+            .addIndex(new SqlCreateIndexBuilder("msg_body", "msg").addCol("body"));
+
+    /**
+     * flags can be added in place as it has a default
+     */
+    private static final DbSchema ADD_COLUMN = new DbSchema()
+            .addTable(msgTable()
+                    .addCol("flags", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.NotNull(), new SqlCreateStmtBuilder.Default(0)))
+            .addIndex(new SqlCreateIndexBuilder("msg_body", "msg").addCol("body"));
+
+    /**
+     * body becoming NOT NULL needs a rebuild, flags is filled from its default as it is not copied
+     */
+    private static final DbSchema REBUILD = new DbSchema()
+            .addTable(new SqlCreateStmtBuilder("msg")
+                    .addCol("_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.PrimaryKey(true))
+                    .addCol("body", SQLiteDataTypes.TEXT, new SqlCreateStmtBuilder.NotNull())
+                    .addCol("flags", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.NotNull(), new SqlCreateStmtBuilder.Default(0)))
+            .addIndex(new SqlCreateIndexBuilder("msg_body", "msg").addCol("body"));
+
+    private static final DbSchema INDEX_CHANGE = new DbSchema()
+            .addTable(msgTable())
+            .addIndex(new SqlCreateIndexBuilder("msg_body", "msg").addColDesc("body").covering("_id"));
+
+    private static final DbSchema NOT_NULL_WITHOUT_DEFAULT = new DbSchema()
+            .addTable(msgTable()
+                    .addCol("flags", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.NotNull()))
+            .addIndex(new SqlCreateIndexBuilder("msg_body", "msg").addCol("body"));
+
+    @Param({"addColumn", "rebuild", "indexChange"})
+    public String plan;
+
+    private SchemaMigration mMigration;
+    private SQLiteDatabase mDb;
+
+    private static SqlCreateStmtBuilder msgTable()
+    {
+        return new SqlCreateStmtBuilder("msg")
+                .addCol("_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.PrimaryKey(true))
+                .addCol("body", SQLiteDataTypes.TEXT);
+    }
+
+    private static DbSchema target(String plan)
+    {
+        if (plan.equals("addColumn"))
+            return ADD_COLUMN;
+        if (plan.equals("rebuild"))
+            return REBUILD;
+        return INDEX_CHANGE;
+    }
+
+    @Setup
+    public void setUp()
+    {
+        verify();
+        mMigration = SchemaMigration.plan(V1, target(plan));
+    }
+
+    @Setup(Level.Invocation)
+    public void createDb()
+    {
+        mDb = populatedV1();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeDb()
+    {
+        mDb.close();
+    }
+
+    @Benchmark
+    public int migrate()
+    {
+        return mMigration.execute(mDb).size();
+    }
+
+    //============================================================================================================
+    // VERIFICATION
+    //============================================================================================================
+
+    private static void verify()
+    {
+        SchemaMigration addColumn = SchemaMigration.plan(V1, ADD_COLUMN);
+        check(addColumn.toString().contains("ALTER TABLE msg ADD COLUMN flags"), "add column should ALTER TABLE:\n" + addColumn);
+        check(!addColumn.toString().contains("__new"), "add column should not rebuild:\n" + addColumn);
+        SQLiteDatabase db = populatedV1();
+        addColumn.execute(db);
+        checkRows(db);
+        check(queryLong(db, "SELECT count(*) FROM msg WHERE flags = 0") == ROWS, "flags should default to 0");
+        checkIndex(db, "msg_body", "(body)");
+        db.close();
+
+        SchemaMigration rebuild = SchemaMigration.plan(V1, REBUILD);
+        check(rebuild.toString().contains("msg__new"), "body becoming NOT NULL should rebuild:\n" + rebuild);
+        db = populatedV1();
+        rebuild.execute(db);
+        checkRows(db);
+        check(queryLong(db, "SELECT count(*) FROM msg WHERE flags = 0") == ROWS, "flags should default to 0");
+        checkIndex(db, "msg_body", "(body)");
+        db.close();
+
+        SchemaMigration indexChange = SchemaMigration.plan(V1, INDEX_CHANGE);
+        check(!indexChange.toString().contains("__new"), "an index change should not rebuild:\n" + indexChange);
+        db = populatedV1();
+        indexChange.execute(db);
+        checkRows(db);
+        checkIndex(db, "msg_body", "(body DESC, _id)");
+        db.close();
+
+        try
+        {
+            SchemaMigration.plan(V1, NOT_NULL_WITHOUT_DEFAULT);
+            throw new IllegalStateException("NOT NULL col without a default should be rejected at plan time");
+        }
+        catch (SqlCreateStmtBuilder.SqlCreateBuilderException expected)
+        {
+            //good
+        }
+
+        check(SchemaMigration.plan(V1, V1).isEmpty(), "no change should plan nothing");
+    }
+
+    private static SQLiteDatabase populatedV1()
+    {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        for (String sql : V1.getCreateStatements())
+            db.execSQL(sql);
+
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO msg (body) VALUES (?)");
+        for (int i = 0; i < ROWS; i++)
+        {
+            insert.bindString(1, "message body " + i);
+            insert.execute();
+        }
+        insert.close();
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        return db;
+    }
+
+    private static void checkRows(SQLiteDatabase db)
+    {
+        check(queryLong(db, "SELECT count(*) FROM msg") == ROWS, "rows should survive the migration");
+        check(queryString(db, "SELECT body FROM msg WHERE _id = 42").equals("message body 41"), "row data should survive the migration");
+    }
+
+    private static void checkIndex(SQLiteDatabase db, String index, String cols)
+    {
+        String sql = queryString(db, "SELECT sql FROM sqlite_master WHERE type = 'index' AND name = '" + index + "'");
+        check(sql.contains(cols), "expected " + index + " on " + cols + " but was " + sql);
+    }
+
+    private static long queryLong(SQLiteDatabase db, String sql)
+    {
+        SQLiteStatement statement = db.compileStatement(sql);
+        long value = statement.simpleQueryForLong();
+        statement.close();
+        return value;
+    }
+
+    private static String queryString(SQLiteDatabase db, String sql)
+    {
+        SQLiteStatement statement = db.compileStatement(sql);
+        String value = statement.simpleQueryForString();
+        statement.close();
+        return value;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new IllegalStateException(message);
+    }
+}
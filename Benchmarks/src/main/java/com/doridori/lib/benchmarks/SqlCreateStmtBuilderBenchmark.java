@@ -0,0 +1,49 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.db.utils.SQLiteDataTypes;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building CREATE TABLE statements for a small and a wide table, including the builder setup
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlCreateStmtBuilderBenchmark
+{
+    @Param({"5", "40"})
+    public int columns;
+
+    @Benchmark
+    public String build()
+    {
+        SqlCreateStmtBuilder builder = new SqlCreateStmtBuilder("benchmark_table");
+        builder.addCol("_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.PrimaryKey(true));
+
+        for (int i = 1; i < columns; i++)
+        {
+            if (i % 3 == 0)
+                builder.addCol("col" + i, SQLiteDataTypes.TEXT, new SqlCreateStmtBuilder.NotNull(), new SqlCreateStmtBuilder.Unique(SqlCreateStmtBuilder.ConflictClause.REPLACE));
+            else
+                builder.addCol("col" + i, i % 2 == 0 ? SQLiteDataTypes.INTEGER : SQLiteDataTypes.REAL);
+        }
+
+        return builder.build();
+    }
+}
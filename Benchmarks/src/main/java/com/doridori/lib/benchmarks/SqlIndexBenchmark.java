@@ -0,0 +1,197 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.db.utils.DbSchema;
+import com.doridori.lib.db.utils.SQLiteDataTypes;
+import com.doridori.lib.db.utils.SqlCreateIndexBuilder;
+import com.doridori.lib.db.utils.SqlCreateStmtBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries against tables built with {@link SqlCreateStmtBuilder} / {@link SqlCreateIndexBuilder} in an in memory
+ * sqlite-jdbc database, with and without the secondary indexes. With indexes on, setup fails unless EXPLAIN QUERY PLAN
+ * shows each query using the index it was written for, so a builder change that breaks an index fails the run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlIndexBenchmark
+{
+    private static final int ROWS = 100000;
+    private static final int CONVERSATIONS = 1000;
+    private static final int GROUPS = 50;
+
+    private static final String LATEST_IN_CONVERSATION = "SELECT body FROM message WHERE conversation_id = ? ORDER BY sent_at DESC LIMIT 20";
+    private static final String UNREAD_IN_CONVERSATION = "SELECT count(*) FROM message WHERE unread = 1 AND conversation_id = ?";
+    private static final String ROLE = "SELECT role FROM membership WHERE user_id = ? AND group_id = ?";
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private Connection mConnection;
+    private PreparedStatement mLatest;
+    private PreparedStatement mUnread;
+    private PreparedStatement mRole;
+    private int mCounter;
+
+    static DbSchema schema(boolean indexed)
+    {
+        DbSchema schema = new DbSchema()
+                .addTable(new SqlCreateStmtBuilder("message")
+                        .addCol("_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.PrimaryKey(true))
+                        .addCol("conversation_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.NotNull())
+                        .addCol("sent_at", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.NotNull())
+                        .addCol("unread", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.NotNull())
+                        .addCol("body", SQLiteDataTypes.TEXT))
+                .addTable(new SqlCreateStmtBuilder("membership")
+                        .addCol("user_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.NotNull())
+                        .addCol("group_id", SQLiteDataTypes.INTEGER, new SqlCreateStmtBuilder.NotNull())
+                        .addCol("role", SQLiteDataTypes.TEXT)
+                        .addConstraint(new SqlCreateStmtBuilder.TablePrimaryKey(null, "user_id", "group_id"))
+                        .withoutRowId());
+
+        if (indexed)
+        {
+            schema.addIndex(new SqlCreateIndexBuilder("message_latest", "message")
+                    .addCol("conversation_id")
+                    .addColDesc("sent_at")
+                    .covering("body"));
+            schema.addIndex(new SqlCreateIndexBuilder("message_unread", "message")
+                    .addCol("conversation_id")
+                    .where("unread = 1"));
+        }
+
+        return schema;
+    }
+
+    @Setup
+    public void setUp() throws SQLException
+    {
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        Statement statement = mConnection.createStatement();
+        for (String sql : schema(indexed).getCreateStatements())
+            statement.execute(sql);
+        statement.close();
+
+        insertRows();
+
+        if (indexed)
+        {
+            assertPlan(LATEST_IN_CONVERSATION, "COVERING INDEX message_latest");
+            assertPlan(UNREAD_IN_CONVERSATION, "INDEX message_unread");
+            assertPlan(ROLE, "PRIMARY KEY");
+        }
+
+        mLatest = mConnection.prepareStatement(LATEST_IN_CONVERSATION);
+        mUnread = mConnection.prepareStatement(UNREAD_IN_CONVERSATION);
+        mRole = mConnection.prepareStatement(ROLE);
+    }
+
+    private void insertRows() throws SQLException
+    {
+        mConnection.setAutoCommit(false);
+
+        PreparedStatement message = mConnection.prepareStatement("INSERT INTO message (conversation_id, sent_at, unread, body) VALUES (?, ?, ?, ?)");
+        PreparedStatement membership = mConnection.prepareStatement("INSERT INTO membership (user_id, group_id, role) VALUES (?, ?, ?)");
+        for (int i = 0; i < ROWS; i++)
+        {
+            message.setInt(1, i % CONVERSATIONS);
+            message.setLong(2, 1400000000000L + i * 1000L);
+            message.setInt(3, i % 50 == 0 ? 1 : 0);
+            message.setString(4, "message body " + i);
+            message.executeUpdate();
+
+            membership.setInt(1, i / GROUPS);
+            membership.setInt(2, i % GROUPS);
+            membership.setString(3, i % 10 == 0 ? "admin" : "member");
+            membership.executeUpdate();
+        }
+        message.close();
+        membership.close();
+
+        mConnection.commit();
+        mConnection.setAutoCommit(true);
+    }
+
+    private void assertPlan(String query, String expected) throws SQLException
+    {
+        PreparedStatement explain = mConnection.prepareStatement("EXPLAIN QUERY PLAN " + query);
+        for (int i = 1; i <= explain.getParameterMetaData().getParameterCount(); i++)
+            explain.setInt(i, 1);
+
+        StringBuilder plan = new StringBuilder();
+        ResultSet rows = explain.executeQuery();
+        while (rows.next())
+            plan.append(rows.getString("detail")).append('\n');
+        rows.close();
+        explain.close();
+
+        if (plan.indexOf(expected) == -1)
+            throw new IllegalStateException("Expected " + query + " to use " + expected + " but the plan was:\n" + plan);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException
+    {
+        mConnection.close();
+    }
+
+    @Benchmark
+    public int latestInConversation() throws SQLException
+    {
+        mLatest.setInt(1, mCounter++ % CONVERSATIONS);
+        return count(mLatest.executeQuery());
+    }
+
+    @Benchmark
+    public int unreadInConversation() throws SQLException
+    {
+        mUnread.setInt(1, mCounter++ % CONVERSATIONS);
+        ResultSet rows = mUnread.executeQuery();
+        rows.next();
+        int unread = rows.getInt(1);
+        rows.close();
+        return unread;
+    }
+
+    @Benchmark
+    public int roleByCompositeKey() throws SQLException
+    {
+        int i = mCounter++ % ROWS;
+        mRole.setInt(1, i / GROUPS);
+        mRole.setInt(2, i % GROUPS);
+        return count(mRole.executeQuery());
+    }
+
+    private static int count(ResultSet rows) throws SQLException
+    {
+        int count = 0;
+        while (rows.next())
+            count++;
+        rows.close();
+        return count;
+    }
+}
@@ -0,0 +1,97 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.util.XLog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XLog call overhead with android.util.Log stubbed out. Run with debug on and off (level 5 / 1) and with and without
+ * caller info (the stack capture).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XLogBenchmark
+{
+    @Param({"5", "1"})
+    public int level;
+
+    @Param({"true", "false"})
+    public boolean callerInfo;
+
+    /**
+     * Lets 1 in 1000 through, so nearly every call is suppressed
+     */
+    private static final XLog.Limit SAMPLED = XLog.Limit.oneIn(1000);
+
+    private int mCounter;
+
+    @Setup
+    public void setUp()
+    {
+        XLog.setLevel(level);
+        XLog.setCallerInfoEnabled(callerInfo);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        XLog.setLevel(XLog.ALL);
+        XLog.setCallerInfoEnabled(true);
+    }
+
+    @Benchmark
+    public void debugConstant()
+    {
+        XLog.d("bound view");
+    }
+
+    /**
+     * The common pattern of concatenating before the call
+     */
+    @Benchmark
+    public void debugConcatenated()
+    {
+        XLog.d("bound position " + mCounter++ + " of " + 100);
+    }
+
+    /**
+     * Same message as {@link #debugConcatenated()} through the parameterized overload
+     */
+    @Benchmark
+    public void debugParameterized()
+    {
+        XLog.d("bound position {} of {}", mCounter++, 100);
+    }
+
+    /**
+     * Same message as {@link #debugParameterized()} with a sampling limit, the cost of a suppressed call
+     */
+    @Benchmark
+    public void debugSampled()
+    {
+        XLog.d(SAMPLED, "bound position {} of {}", mCounter++, 100);
+    }
+
+    @Benchmark
+    public void verboseNoText()
+    {
+        XLog.v();
+    }
+}
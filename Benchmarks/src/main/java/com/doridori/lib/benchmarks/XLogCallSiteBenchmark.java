@@ -0,0 +1,68 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.util.XLog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What resolving the call site costs, and how it grows with stack depth (ui code is often 30 - 60 frames deep). Splits
+ * the cost into capturing the Throwable, materialising its StackTraceElements and a full XLog call using the cached
+ * call site prefix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XLogCallSiteBenchmark
+{
+    @Param({"5", "50"})
+    public int stackDepth;
+
+    @Benchmark
+    public Object captureThrowable()
+    {
+        return atDepth(stackDepth, 0);
+    }
+
+    @Benchmark
+    public Object captureStackTrace()
+    {
+        return atDepth(stackDepth, 1);
+    }
+
+    @Benchmark
+    public Object xlogDebug()
+    {
+        return atDepth(stackDepth, 2);
+    }
+
+    private static Object atDepth(int depth, int op)
+    {
+        if (depth > 0)
+            return atDepth(depth - 1, op);
+
+        switch (op)
+        {
+            case 0:
+                return new Throwable();
+            case 1:
+                return new Throwable().getStackTrace();
+            default:
+                XLog.d("bound view");
+                return null;
+        }
+    }
+}
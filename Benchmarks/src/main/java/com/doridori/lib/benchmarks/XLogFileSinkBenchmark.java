@@ -0,0 +1,74 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.util.XLogFileSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost to the logging thread of handing a line to the file sink. At this rate the writer cannot keep up so most calls
+ * after the first few thousand take the (equally cheap) drop path - see the dropped count printed on tear down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XLogFileSinkBenchmark
+{
+    private File mDir;
+    private XLogFileSink mSink;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        mDir = File.createTempFile("xlog", "");
+        mDir.delete();
+        mSink = new XLogFileSink(mDir, "bench", 8192);
+        mSink.setMaxFiles(2);
+        mSink.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        mSink.close(5000);
+        System.out.println("written=" + mSink.getWrittenCount() + " dropped=" + mSink.getDroppedCount());
+
+        File[] files = mDir.listFiles();
+        if (null != files)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Benchmark
+    public void log()
+    {
+        mSink.log(3, "Bench", "bound position 12 of 100");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void logContended()
+    {
+        mSink.log(3, "Bench", "bound position 12 of 100");
+    }
+}
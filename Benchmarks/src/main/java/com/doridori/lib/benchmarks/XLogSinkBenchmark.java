@@ -0,0 +1,93 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.util.AbsLogFileSink;
+import com.doridori.lib.util.XLog;
+import com.doridori.lib.util.XLogBinarySink;
+import com.doridori.lib.util.XLogFileSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging thread cost of a parameterized XLog call going only to a text file sink (formatted on the calling thread) vs
+ * only to a binary sink (args snapshotted, never formatted). Caller info is off so the stack walk does not hide the
+ * difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XLogSinkBenchmark
+{
+    @Param({"text", "binary"})
+    public String sink;
+
+    private File mDir;
+    private AbsLogFileSink mSink;
+    private int mCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        mDir = File.createTempFile("xlog", "");
+        mDir.delete();
+
+        XLog.setLogcatEnabled(false);
+        XLog.setCallerInfoEnabled(false);
+
+        if ("text".equals(sink))
+        {
+            XLogFileSink fileSink = new XLogFileSink(mDir, "bench", 8192);
+            XLog.setSink(fileSink);
+            mSink = fileSink;
+        }
+        else
+        {
+            XLogBinarySink binarySink = new XLogBinarySink(mDir, "bench", 8192);
+            XLog.setEventSink(binarySink);
+            mSink = binarySink;
+        }
+        mSink.setMaxFiles(2);
+        mSink.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        XLog.setSink(null);
+        XLog.setEventSink(null);
+        XLog.setLogcatEnabled(true);
+        XLog.setCallerInfoEnabled(true);
+        mSink.close(5000);
+
+        File[] files = mDir.listFiles();
+        if (null != files)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Benchmark
+    public void debugParameterized()
+    {
+        XLog.d("bound position {} of {}", mCounter++, 100);
+    }
+}
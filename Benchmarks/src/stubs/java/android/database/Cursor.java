@@ -0,0 +1,33 @@
+package android.database;
+
+/**
+ * JVM stub with the methods the db utils use
+ */
+public interface Cursor
+{
+    int getCount();
+
+    boolean moveToPosition(int position);
+
+    boolean moveToNext();
+
+    String[] getColumnNames();
+
+    int getColumnIndex(String columnName);
+
+    boolean isNull(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    int getInt(int columnIndex);
+
+    double getDouble(int columnIndex);
+
+    float getFloat(int columnIndex);
+
+    String getString(int columnIndex);
+
+    byte[] getBlob(int columnIndex);
+
+    void close();
+}
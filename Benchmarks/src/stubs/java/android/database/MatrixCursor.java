@@ -0,0 +1,138 @@
+package android.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM stub holding rows in memory. getColumnIndex() works like SQLiteCursors (strip any "table." prefix then a name
+ * to index map lookup) so per row lookups cost about what they do on a device
+ */
+public class MatrixCursor implements Cursor
+{
+    private final String[] mColumnNames;
+    private final List<Object[]> mRows;
+    private Map<String, Integer> mColumnNameMap;
+    private int mPosition = -1;
+
+    public MatrixCursor(String[] columnNames, int initialCapacity)
+    {
+        mColumnNames = columnNames;
+        mRows = new ArrayList<Object[]>(initialCapacity);
+    }
+
+    public void addRow(Object[] columnValues)
+    {
+        mRows.add(columnValues.clone());
+    }
+
+    @Override
+    public int getCount()
+    {
+        return mRows.size();
+    }
+
+    @Override
+    public boolean moveToPosition(int position)
+    {
+        if (position >= mRows.size())
+        {
+            mPosition = mRows.size();
+            return false;
+        }
+        if (position < 0)
+        {
+            mPosition = -1;
+            return false;
+        }
+        mPosition = position;
+        return true;
+    }
+
+    @Override
+    public boolean moveToNext()
+    {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public String[] getColumnNames()
+    {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName)
+    {
+        if (null == mColumnNameMap)
+        {
+            Map<String, Integer> map = new HashMap<String, Integer>();
+            for (int i = 0; i < mColumnNames.length; i++)
+                map.put(mColumnNames[i], i);
+            mColumnNameMap = map;
+        }
+
+        int periodIndex = columnName.lastIndexOf('.');
+        if (periodIndex != -1)
+            columnName = columnName.substring(periodIndex + 1);
+
+        Integer index = mColumnNameMap.get(columnName);
+        return null == index ? -1 : index;
+    }
+
+    private Object get(int columnIndex)
+    {
+        return mRows.get(mPosition)[columnIndex];
+    }
+
+    @Override
+    public boolean isNull(int columnIndex)
+    {
+        return null == get(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex)
+    {
+        Object value = get(columnIndex);
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public int getInt(int columnIndex)
+    {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex)
+    {
+        Object value = get(columnIndex);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+    }
+
+    @Override
+    public float getFloat(int columnIndex)
+    {
+        return (float) getDouble(columnIndex);
+    }
+
+    @Override
+    public String getString(int columnIndex)
+    {
+        Object value = get(columnIndex);
+        return null == value ? null : value.toString();
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex)
+    {
+        return (byte[]) get(columnIndex);
+    }
+
+    @Override
+    public void close()
+    {
+    }
+}
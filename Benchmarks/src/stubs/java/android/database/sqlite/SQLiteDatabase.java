@@ -0,0 +1,131 @@
+package android.database.sqlite;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JVM stand in backed by sqlite-jdbc, with just the methods the db utils use, so they can be benchmarked against a real
+ * SQLite. Transactions nest like the real one: only the outermost endTransaction() commits, and only if every level
+ * was marked successful
+ */
+public class SQLiteDatabase
+{
+    private final Connection mConnection;
+    private int mTransactionDepth;
+    private boolean mSuccessful;
+    private boolean mFailed;
+
+    private SQLiteDatabase(String url)
+    {
+        try
+        {
+            mConnection = DriverManager.getConnection(url);
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * In memory database, as SQLiteDatabase.create(null)
+     */
+    public static SQLiteDatabase create(Object factory)
+    {
+        return new SQLiteDatabase("jdbc:sqlite::memory:");
+    }
+
+    public static SQLiteDatabase openOrCreateDatabase(File file, Object factory)
+    {
+        return new SQLiteDatabase("jdbc:sqlite:" + file.getAbsolutePath());
+    }
+
+    public void beginTransaction()
+    {
+        try
+        {
+            if (mTransactionDepth == 0)
+            {
+                mConnection.setAutoCommit(false);
+                mFailed = false;
+            }
+            mTransactionDepth++;
+            mSuccessful = false;
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setTransactionSuccessful()
+    {
+        mSuccessful = true;
+    }
+
+    public void endTransaction()
+    {
+        if (!mSuccessful)
+            mFailed = true;
+
+        mSuccessful = false;
+        mTransactionDepth--;
+        if (mTransactionDepth > 0)
+            return;
+
+        try
+        {
+            if (mFailed)
+                mConnection.rollback();
+            else
+                mConnection.commit();
+
+            mConnection.setAutoCommit(true);
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void execSQL(String sql)
+    {
+        try
+        {
+            Statement statement = mConnection.createStatement();
+            statement.execute(sql);
+            statement.close();
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public SQLiteStatement compileStatement(String sql)
+    {
+        try
+        {
+            return new SQLiteStatement(mConnection.prepareStatement(sql));
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            mConnection.close();
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
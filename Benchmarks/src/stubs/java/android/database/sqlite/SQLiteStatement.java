@@ -0,0 +1,162 @@
+package android.database.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * JVM stand in backed by a sqlite-jdbc PreparedStatement, see {@link SQLiteDatabase}
+ */
+public class SQLiteStatement
+{
+    private final PreparedStatement mStatement;
+
+    SQLiteStatement(PreparedStatement statement)
+    {
+        mStatement = statement;
+    }
+
+    public void bindNull(int index)
+    {
+        try
+        {
+            mStatement.setNull(index, Types.NULL);
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void bindLong(int index, long value)
+    {
+        try
+        {
+            mStatement.setLong(index, value);
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void bindDouble(int index, double value)
+    {
+        try
+        {
+            mStatement.setDouble(index, value);
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void bindString(int index, String value)
+    {
+        try
+        {
+            mStatement.setString(index, value);
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void bindBlob(int index, byte[] value)
+    {
+        try
+        {
+            mStatement.setBytes(index, value);
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void clearBindings()
+    {
+        try
+        {
+            mStatement.clearParameters();
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void execute()
+    {
+        try
+        {
+            mStatement.executeUpdate();
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the first col of the first row, as the real one throws if there are no rows
+     */
+    public long simpleQueryForLong()
+    {
+        try
+        {
+            ResultSet rows = mStatement.executeQuery();
+            try
+            {
+                if (!rows.next())
+                    throw new IllegalStateException("no rows");
+                return rows.getLong(1);
+            }
+            finally
+            {
+                rows.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String simpleQueryForString()
+    {
+        try
+        {
+            ResultSet rows = mStatement.executeQuery();
+            try
+            {
+                if (!rows.next())
+                    throw new IllegalStateException("no rows");
+                return rows.getString(1);
+            }
+            finally
+            {
+                rows.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            mStatement.close();
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * JVM stub for {@link com.doridori.lib.util.XLogFileSink}s writer thread
+ */
+public class Process
+{
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+    public static void setThreadPriority(int priority)
+    {
+    }
+}
@@ -0,0 +1,12 @@
+package android.view;
+
+/**
+ * JVM stub - only what {@link com.doridori.lib.view.GroupedListAdapter} touches
+ */
+public class View
+{
+    public int getId()
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,8 @@
+package android.view;
+
+/**
+ * JVM stub - only what {@link com.doridori.lib.view.GroupedListAdapter} touches
+ */
+public class ViewGroup extends View
+{
+}
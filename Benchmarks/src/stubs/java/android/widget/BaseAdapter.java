@@ -0,0 +1,18 @@
+package android.widget;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * JVM stub - only what {@link com.doridori.lib.view.GroupedListAdapter} touches
+ */
+public abstract class BaseAdapter
+{
+    public abstract int getCount();
+
+    public abstract Object getItem(int position);
+
+    public abstract long getItemId(int position);
+
+    public abstract View getView(int position, View convertView, ViewGroup parent);
+}
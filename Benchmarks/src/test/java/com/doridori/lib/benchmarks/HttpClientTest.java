@@ -0,0 +1,200 @@
+package com.doridori.lib.benchmarks;
+
+import com.doridori.lib.io.http.HttpClient;
+import com.doridori.lib.io.http.HttpMethodsHelper;
+import com.doridori.lib.io.http.KeepAlivePool;
+import com.doridori.lib.io.http.RetryPolicy;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link HttpClient} against a {@link LoopbackServer}, which counts the sockets it accepts. Each test has its own
+ * server (so its own port) as the platform connection pool is shared by everything in the process.
+ */
+public class HttpClientTest
+{
+    private static final int CALLS = 20;
+
+    private LoopbackServer mServer;
+
+    @After
+    public void tearDown() throws IOException
+    {
+        if (null != mServer)
+            mServer.close();
+    }
+
+    //============================================================================================================
+    // KEEP ALIVE
+    //============================================================================================================
+
+    /**
+     * Sequential calls reuse one socket, including after error responses (so bodies are drained), and the
+     * {@link KeepAlivePool} estimate matches
+     */
+    @Test
+    public void keepAliveCallsShareOneSocket() throws IOException
+    {
+        mServer = new LoopbackServer(false);
+        HttpClient client = new HttpClient();
+        for (int i = 0; i < CALLS; i++)
+            assertArrayEquals(LoopbackServer.BODY, client.get(mServer.url("/ok")).rawContents);
+
+        mServer.mStatus = 404;
+        for (int i = 0; i < CALLS; i++)
+        {
+            try
+            {
+                client.get(mServer.url("/missing"));
+                fail("expected a 404");
+            }
+            catch (HttpMethodsHelper.HttpStatusCodeException expected)
+            {
+                assertEquals(404, expected.getStatusCode());
+            }
+        }
+
+        assertEquals("accepted sockets", 1, mServer.getAcceptedCount());
+        assertEstimate(client.getPool(), 2 * CALLS - 1, 1);
+    }
+
+    @Test
+    public void connectionCloseGetsASocketPerCall() throws IOException
+    {
+        mServer = new LoopbackServer(true);
+        HttpClient client = new HttpClient();
+        for (int i = 0; i < CALLS; i++)
+            client.get(mServer.url("/close"));
+
+        assertEquals("accepted sockets", CALLS, mServer.getAcceptedCount());
+        assertEstimate(client.getPool(), 0, CALLS);
+    }
+
+    //============================================================================================================
+    // RETRIES
+    //============================================================================================================
+
+    /**
+     * A response handler throwing during a circuit breakers half open trial must not leave the breaker shut
+     */
+    @Test
+    public void abandonedTrialReleasesBreaker() throws IOException
+    {
+        mServer = new LoopbackServer(false);
+        URL url = mServer.url("/flaky");
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxRetries(0);
+        //opens on the first failure, half open straight away
+        policy.setCircuitBreaker(1, 0);
+        HttpClient client = new HttpClient(config(policy));
+
+        mServer.mStatus = 500;
+        try
+        {
+            client.get(url);
+            fail("expected a 500");
+        }
+        catch (HttpMethodsHelper.HttpStatusCodeException expected)
+        {
+            //good
+        }
+        assertTrue("a 500 should open the breaker", policy.isOpen(url));
+
+        mServer.mStatus = 200;
+        try
+        {
+            client.get(url, new HttpMethodsHelper.ResponseHandler<Object>()
+            {
+                @Override
+                public Object handleResponse(int responseCode, InputStream body, HttpURLConnection connection)
+                {
+                    throw new UnsupportedOperationException("handler bug");
+                }
+            });
+            fail("expected the handler to throw");
+        }
+        catch (UnsupportedOperationException expected)
+        {
+            //good
+        }
+
+        //throws CircuitOpenException if the trial was never given up
+        assertArrayEquals(LoopbackServer.BODY, client.get(url).rawContents);
+        assertFalse("a good call after the abandoned trial should close the breaker", policy.isOpen(url));
+    }
+
+    @Test
+    public void startedHandlerIsNotRetried() throws IOException
+    {
+        mServer = new LoopbackServer(false);
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxRetries(2);
+        policy.setBaseDelayMs(1);
+        HttpClient client = new HttpClient(config(policy));
+
+        final AtomicInteger handlerCalls = new AtomicInteger();
+        try
+        {
+            client.get(mServer.url("/stream"), new HttpMethodsHelper.ResponseHandler<Object>()
+            {
+                @Override
+                public Object handleResponse(int responseCode, InputStream body, HttpURLConnection connection) throws IOException
+                {
+                    handlerCalls.incrementAndGet();
+                    body.read();
+                    throw new IOException("failed mid body");
+                }
+            });
+            fail("expected the handler to throw");
+        }
+        catch (IOException expected)
+        {
+            //good
+        }
+        assertEquals("handler calls", 1, handlerCalls.get());
+        assertEquals("retries", 0, policy.getRetryCount());
+
+        //buffered gets are still retried, a 503 fails before any handler runs
+        mServer.mStatus = 503;
+        try
+        {
+            client.get(mServer.url("/busy"));
+            fail("expected a 503");
+        }
+        catch (HttpMethodsHelper.HttpStatusCodeException expected)
+        {
+            //good
+        }
+        assertEquals("retries", 2, policy.getRetryCount());
+    }
+
+    //============================================================================================================
+    // HELPERS
+    //============================================================================================================
+
+    private static HttpMethodsHelper.DefaultConnectionConfig config(RetryPolicy policy)
+    {
+        HttpMethodsHelper.DefaultConnectionConfig config = new HttpMethodsHelper.DefaultConnectionConfig();
+        config.setRetryPolicy(policy);
+        return config;
+    }
+
+    private static void assertEstimate(KeepAlivePool pool, long hits, long misses)
+    {
+        assertEquals("estimated hits " + pool, hits, pool.getEstimatedHitCount());
+        assertEquals("estimated misses " + pool, misses, pool.getEstimatedMissCount());
+    }
+}